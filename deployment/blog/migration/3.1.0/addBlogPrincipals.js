@@ -0,0 +1,35 @@
+var indexedRights = ["org-entcore-blog-controllers-BlogController|shareResource", "org-entcore-blog-controllers-PostController|list"];
+var bulk = [];
+db.blogs.find({}, { "author" : 1, "shared" : 1 }).forEach(function(blog) {
+    var principals = { "all" : [] };
+    indexedRights.forEach(function(right) { principals[right] = []; });
+    var add = function(key, id) {
+        if (!principals[key]) principals[key] = [];
+        if (principals[key].indexOf(id) < 0) principals[key].push(id);
+    };
+    (blog.shared || []).forEach(function(share) {
+        var id = share.userId || share.groupId;
+        if (!id) return;
+        add("all", id);
+        for (var action in share) {
+            if (share[action] === true) add(action, id);
+        }
+    });
+    if (blog.author && blog.author.userId) {
+        for (var key in principals) add(key, blog.author.userId);
+    }
+    bulk.push({ "updateOne" : { "filter" : { "_id" : blog._id }, "update" : { "$set" : { "principals" : principals } } } });
+    if (bulk.length >= 1000) {
+        db.blogs.bulkWrite(bulk);
+        bulk = [];
+    }
+});
+if (bulk.length > 0) {
+    db.blogs.bulkWrite(bulk);
+}
+db.blogs.createIndex({ "principals.all" : 1 }, { name : "idx_blog_principals_all" });
+indexedRights.forEach(function(right, i) {
+    var key = {};
+    key["principals." + right] = 1;
+    db.blogs.createIndex(key, { name : "idx_blog_principals_" + right.substring(right.lastIndexOf("|") + 1) });
+});
@@ -0,0 +1,9 @@
+// documents whose explorer notification is due for dispatch, and the oldest pending one for the lag metric
+db.posts.createIndex({ "ingestPending.nextAttempt" : 1 }, { name : "idx_post_ingest_pending_next_attempt", sparse : true });
+db.posts.createIndex({ "ingestPending.created" : 1 }, { name : "idx_post_ingest_pending_created", sparse : true });
+db.blogs.createIndex({ "ingestPending.nextAttempt" : 1 }, { name : "idx_blog_ingest_pending_next_attempt", sparse : true });
+db.blogs.createIndex({ "ingestPending.created" : 1 }, { name : "idx_blog_ingest_pending_created", sparse : true });
+// deletions due for dispatch (dead letters have none), the oldest pending one, and the dead letters
+db.blogsIngestOutbox.createIndex({ "nextAttempt" : 1 }, { name : "idx_ingest_outbox_next_attempt", sparse : true });
+db.blogsIngestOutbox.createIndex({ "created" : 1 }, { name : "idx_ingest_outbox_created" });
+db.blogsIngestOutbox.createIndex({ "dead" : 1 }, { name : "idx_ingest_outbox_dead", sparse : true });
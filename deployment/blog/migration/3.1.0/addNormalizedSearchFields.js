@@ -0,0 +1,38 @@
+// same folding as SearchWordTokenizer.normalize
+var folding = {};
+var from = "ÀÁÂÃÄÅÆÇÈÉÊËÌÍÎÏÑÒÓÔÕÖØÙÚÛÜÝàáâãäåæçèéêëìíîïñòóôõöøùúûüýÿŒœ";
+var to = ["A", "A", "A", "A", "A", "A", "AE", "C", "E", "E", "E", "E", "I", "I", "I", "I", "N",
+    "O", "O", "O", "O", "O", "O", "U", "U", "U", "U", "Y", "a", "a", "a", "a", "a", "a", "ae", "c", "e", "e",
+    "e", "e", "i", "i", "i", "i", "n", "o", "o", "o", "o", "o", "o", "u", "u", "u", "u", "y", "y", "OE", "oe"];
+for (var i = 0; i < from.length; i++) {
+    folding[from.charAt(i)] = to[i];
+}
+var normalize = function(text) {
+    var normalized = "";
+    for (var i = 0; i < (text || "").length; i++) {
+        var c = text.charAt(i);
+        normalized += (folding[c] || c).toLowerCase();
+    }
+    return normalized;
+};
+var backfill = function(collection, keys, fields) {
+    var bulk = [];
+    collection.find({}, keys).forEach(function(doc) {
+        var set = {};
+        for (var source in fields) {
+            set[fields[source]] = normalize(doc[source]);
+        }
+        bulk.push({ "updateOne" : { "filter" : { "_id" : doc._id }, "update" : { "$set" : set } } });
+        if (bulk.length >= 1000) {
+            collection.bulkWrite(bulk);
+            bulk = [];
+        }
+    });
+    if (bulk.length > 0) {
+        collection.bulkWrite(bulk);
+    }
+};
+// the version 3 text indexes on title and contentPlain already ignore case and accents, only the prefix
+// autocompletion needs a normalized copy
+backfill(db.blogs, { "title" : 1 }, { "title" : "titleNormalized" });
+backfill(db.posts, { "title" : 1 }, { "title" : "titleNormalized" });
@@ -0,0 +1,8 @@
+db.blogs.find({}, { "_id" : 1 }).forEach(function(blog) {
+    var counters = {
+        "DRAFT" : db.posts.count({ "blog.$id" : blog._id, "state" : "DRAFT" }),
+        "SUBMITTED" : db.posts.count({ "blog.$id" : blog._id, "state" : "SUBMITTED" }),
+        "PUBLISHED" : db.posts.count({ "blog.$id" : blog._id, "state" : "PUBLISHED" })
+    };
+    db.blogs.update({ "_id" : blog._id }, { $set : { "postCounters" : counters } });
+});
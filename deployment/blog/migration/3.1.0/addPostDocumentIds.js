@@ -0,0 +1,29 @@
+// same extraction as PostContent: ids of the workspace documents referenced inside the tags of the content
+var documentIds = function(content) {
+    var ids = [];
+    var tags = (content || "").match(/<[^>]*>/g) || [];
+    tags.forEach(function(tag) {
+        var re = /\/workspace\/(?:pub\/)?document\/([A-Za-z0-9_-]+)/g;
+        var match;
+        while ((match = re.exec(tag)) !== null) {
+            if (ids.indexOf(match[1]) < 0) {
+                ids.push(match[1]);
+            }
+        }
+    });
+    return ids;
+};
+var bulk = [];
+db.posts.find({ "documentIds" : { "$exists" : false } }, { "content" : 1 }).forEach(function(post) {
+    bulk.push({ "updateOne" : { "filter" : { "_id" : post._id }, "update" : { "$set" : { "documentIds" : documentIds(post.content) } } } });
+    if (bulk.length >= 1000) {
+        db.posts.bulkWrite(bulk);
+        bulk = [];
+    }
+});
+if (bulk.length > 0) {
+    db.posts.bulkWrite(bulk);
+}
+// posts of a blog referencing documents, read when the visibility of the blog changes
+// _id before the multikey documentIds, so that the batches of the visibility switch are read in _id order
+db.posts.createIndex({ "blog.$id" : 1, "_id" : 1, "documentIds" : 1 }, { name : "idx_post_blog_id_document_ids" });
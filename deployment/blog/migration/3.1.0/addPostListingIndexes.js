@@ -0,0 +1,8 @@
+// listPublic, list by state, count, counter, cursor pagination and latest posts per blog
+db.posts.createIndex({ "blog.$id": 1, "state": 1, "sorted": -1, "_id": -1 }, { name: "idx_post_blog_state_sorted" });
+// drafts and submitted posts restricted to their author, _id ends the key as in the keyset sort {sorted: -1, _id: -1}
+db.posts.createIndex({ "blog.$id": 1, "state": 1, "author.userId": 1, "sorted": -1, "_id": -1 }, { name: "idx_post_blog_state_author_sorted" });
+// prefix of the new compound indexes
+if (db.posts.getIndexes().some(function(index) { return index.name === "idx_post_blogid"; })) {
+    db.posts.dropIndex("idx_post_blogid");
+}
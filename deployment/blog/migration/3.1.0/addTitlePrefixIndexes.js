@@ -0,0 +1,3 @@
+// autocompletion on titles when the in-memory search index is not ready: anchored regex on titleNormalized
+db.blogs.createIndex({ "titleNormalized": 1 }, { name: "idx_blog_title_normalized" });
+db.posts.createIndex({ "titleNormalized": 1, "state": 1 }, { name: "idx_post_title_normalized_state" });
@@ -23,8 +23,14 @@
 
 package org.entcore.blog;
 
+import fr.wseduc.cron.CronTrigger;
 import fr.wseduc.mongodb.MongoDb;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
 import org.entcore.blog.controllers.BlogController;
 import org.entcore.blog.controllers.FoldersController;
 import org.entcore.blog.controllers.PostController;
@@ -32,38 +38,72 @@ import org.entcore.blog.core.constants.Field;
 import org.entcore.blog.events.BlogSearchingEvents;
 import org.entcore.blog.explorer.BlogExplorerPlugin;
 import org.entcore.blog.explorer.PostExplorerPlugin;
+import org.entcore.blog.search.AccessibleBlogs;
+import org.entcore.blog.search.BlogSearchIndex;
+import org.entcore.blog.search.SearchResultCache;
+import org.entcore.blog.search.SearchUpdates;
+import org.entcore.blog.search.TitleAutocomplete;
+import org.entcore.blog.security.BlogAclCache;
+import org.entcore.blog.security.BlogShareChanges;
 import org.entcore.blog.security.BlogResourcesProvider;
 import org.entcore.blog.services.BlogService;
 import org.entcore.blog.services.PostService;
 import org.entcore.blog.services.impl.BlogRepositoryEvents;
+import org.entcore.blog.services.impl.BlogVisibilitySwitch;
 import org.entcore.blog.services.impl.DefaultBlogService;
 import org.entcore.blog.services.impl.DefaultPostService;
+import org.entcore.blog.services.impl.IngestOutbox;
+import org.entcore.blog.services.impl.PostContentProcessor;
+import org.entcore.blog.services.impl.PostViewCounter;
 import org.entcore.common.events.EventStoreFactory;
 import org.entcore.common.http.BaseServer;
 import org.entcore.common.mongodb.MongoDbConf;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class Blog extends BaseServer {
+    private static final Logger log = LoggerFactory.getLogger(Blog.class);
 
     public static final String APPLICATION = "blog";
     public static final String BLOG_TYPE = "blog";
     public static final String POSTS_COLLECTION = "posts";
     public static final String BLOGS_COLLECTION = "blogs";
     BlogExplorerPlugin blogPlugin;
+    PostViewCounter viewCounter;
+    PostContentProcessor contentProcessor;
+    IngestOutbox ingestOutbox;
+    BlogAclCache aclCache;
+    BlogSearchIndex searchIndex;
+    AccessibleBlogs accessibleBlogs;
+    SearchResultCache resultCache;
 
     @Override
     public void start() throws Exception {
         super.start();
-        setDefaultResourceFilter(new BlogResourcesProvider());
+        final MongoDb mongo = MongoDb.getInstance();
+        aclCache = BlogAclCache.create(vertx, mongo, config);
+        aclCache.start();
+        setDefaultResourceFilter(new BlogResourcesProvider(aclCache));
 
         MongoDbConf.getInstance().setCollection("blogs");
 
         EventStoreFactory eventStoreFactory = EventStoreFactory.getFactory();
         eventStoreFactory.setVertx(vertx);
 
-        setRepositoryEvents(new BlogRepositoryEvents(vertx));
+        accessibleBlogs = AccessibleBlogs.create(vertx, config);
+        accessibleBlogs.start();
+        searchIndex = BlogSearchIndex.create(vertx, mongo, config);
+        if (searchIndex != null) {
+            searchIndex.start();
+        }
+        resultCache = SearchResultCache.create(vertx, config);
+        if (resultCache != null) {
+            resultCache.start();
+        }
+        // published even if this instance follows none of them, other instances of the cluster may
+        final SearchUpdates searchUpdates = new SearchUpdates(vertx);
 
         if (config.getBoolean("searching-event", true)) {
             List<String> searchingOnList = config.getJsonArray("searching-on", new JsonArray().add(Field.POST)).stream()
@@ -71,7 +111,7 @@ public class Blog extends BaseServer {
                     .map(String.class::cast)
                     .map(String::toLowerCase)
                     .collect(Collectors.toList());
-            setSearchingEvents(new BlogSearchingEvents(searchingOnList));
+            setSearchingEvents(new BlogSearchingEvents(searchingOnList, accessibleBlogs, searchIndex, resultCache));
         }
 
         final MongoDbConf conf = MongoDbConf.getInstance();
@@ -80,18 +120,81 @@ public class Blog extends BaseServer {
 
         blogPlugin = BlogExplorerPlugin.create(securedActions);
         final PostExplorerPlugin postPlugin = blogPlugin.postPlugin();
-        final MongoDb mongo = MongoDb.getInstance();
-        final PostService postService = new DefaultPostService(mongo, config.getInteger("post-search-word-min-size", 4), PostController.LIST_ACTION, postPlugin);
+        viewCounter = PostViewCounter.create(vertx, mongo, config);
+        viewCounter.start();
+        contentProcessor = PostContentProcessor.create(vertx, config);
+        contentProcessor.start();
+        ingestOutbox = IngestOutbox.create(vertx, mongo, blogPlugin, config);
+        ingestOutbox.start();
+        final PostService postService = new DefaultPostService(mongo, config.getInteger("post-search-word-min-size", 4), PostController.LIST_ACTION, postPlugin)
+                .setViewCounter(viewCounter)
+                .setSearchUpdates(searchUpdates)
+                .setAclCache(aclCache)
+                .setContentProcessor(contentProcessor)
+                .setOutbox(ingestOutbox);
         final BlogService blogService = new DefaultBlogService(mongo, postService, config.getInteger("blog-paging-size", 30),
-                config.getInteger("blog-search-word-min-size", 4), blogPlugin);
-        addController(new BlogController(mongo, blogService, postService));
+                config.getInteger("blog-search-word-min-size", 4), blogPlugin)
+                .setSearchUpdates(searchUpdates)
+                .setOutbox(ingestOutbox);
+        final BlogShareChanges shareChanges = new BlogShareChanges(blogService, aclCache, accessibleBlogs);
+        setRepositoryEvents(new BlogRepositoryEvents(vertx, shareChanges));
+        blogPlugin.setSharesChangedHandler(shareChanges::changed);
+        // the counters are $inc'ed apart from the post writes, the repair resets those a failed $inc left behind
+        final String countersRepairCron = config.getString("post-counters-repair-cron", "0 30 2 * * ? *");
+        if (countersRepairCron != null && !countersRepairCron.isEmpty()) {
+            new CronTrigger(vertx, countersRepairCron).schedule(tick -> postService.repairCounters(res -> {
+                if (res.isLeft()) {
+                    log.error("Failed to repair post counters: " + res.left().getValue());
+                }
+            }));
+        }
+        addController(new BlogController(mongo, blogService, postService, aclCache, accessibleBlogs,
+                new TitleAutocomplete(mongo, accessibleBlogs, searchIndex),
+                BlogVisibilitySwitch.create(vertx, mongo, postService, contentProcessor, config)));
         addController(new PostController(blogService, postService));
         addController(new FoldersController("blogsFolders"));
         blogPlugin.start();
     }
 
+    @Override
+    public void stop(Promise<Void> stopPromise) throws Exception {
+        // pending views and the search index snapshot are written before the verticle is reported as stopped
+        final List<Future> flushed = new ArrayList<>();
+        if (viewCounter != null) {
+            flushed.add(viewCounter.stop());
+        }
+        if (searchIndex != null) {
+            flushed.add(searchIndex.stop());
+        }
+        CompositeFuture.join(flushed).onComplete(ar -> {
+            if (ar.failed()) {
+                log.error("Failed to flush on stop: " + ar.cause().getMessage());
+            }
+            try {
+                super.stop(stopPromise);
+            } catch (Exception e) {
+                stopPromise.fail(e);
+            }
+        });
+    }
+
     @Override
     public void stop() throws Exception {
+        if (ingestOutbox != null) {
+            ingestOutbox.stop();
+        }
+        if (contentProcessor != null) {
+            contentProcessor.stop();
+        }
+        if (aclCache != null) {
+            aclCache.stop();
+        }
+        if (accessibleBlogs != null) {
+            accessibleBlogs.stop();
+        }
+        if (resultCache != null) {
+            resultCache.stop();
+        }
         super.stop();
         if (blogPlugin != null) {
             blogPlugin.stop();
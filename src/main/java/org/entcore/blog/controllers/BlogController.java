@@ -37,6 +37,7 @@ import fr.wseduc.webutils.Utils;
 import fr.wseduc.webutils.http.BaseController;
 import fr.wseduc.webutils.http.Renders;
 import fr.wseduc.webutils.request.RequestUtils;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -45,11 +46,17 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.entcore.blog.Blog;
 import org.entcore.blog.explorer.BlogExplorerPlugin;
+import org.entcore.blog.search.AccessibleBlogs;
+import org.entcore.blog.search.TitleAutocomplete;
+import org.entcore.blog.security.BlogAclCache;
+import org.entcore.blog.security.BlogRights;
+import org.entcore.blog.security.BlogShareChanges;
 import org.entcore.blog.security.ShareAndOwnerBlog;
 import org.entcore.blog.services.BlogService;
 import org.entcore.blog.services.BlogTimelineService;
 import org.entcore.blog.services.PostService;
 import org.entcore.blog.services.impl.DefaultBlogTimelineService;
+import org.entcore.blog.services.impl.BlogVisibilitySwitch;
 import org.entcore.common.events.EventHelper;
 import org.entcore.common.events.EventStore;
 import org.entcore.common.events.EventStoreFactory;
@@ -66,7 +73,6 @@ import org.entcore.common.utils.StringUtils;
 import org.vertx.java.core.http.RouteMatcher;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.entcore.common.http.response.DefaultResponseHandler.arrayResponseHandler;
 import static org.entcore.common.http.response.DefaultResponseHandler.defaultResponseHandler;
@@ -82,11 +88,24 @@ public class BlogController extends BaseController {
 	private final MongoDb mongo;
 	private static final String PUBLIC_RESOURCE_NAME = "blog_public";
 	private static final String PRIVATE_RESOURCE_NAME = "blog_private";
-
-	public BlogController(MongoDb mongo, final BlogService blog, final PostService post){
+	private int linkerMaxPosts;
+	private final BlogAclCache aclCache;
+	private final AccessibleBlogs accessibleBlogs;
+	private final BlogShareChanges shareChanges;
+	private final TitleAutocomplete autocomplete;
+	private final BlogVisibilitySwitch visibilitySwitch;
+
+	public BlogController(MongoDb mongo, final BlogService blog, final PostService post, final BlogAclCache aclCache,
+			final AccessibleBlogs accessibleBlogs, final TitleAutocomplete autocomplete,
+			final BlogVisibilitySwitch visibilitySwitch){
 		this.mongo = mongo;
 		this.blog = blog;
 		this.postService = post;
+		this.aclCache = aclCache;
+		this.accessibleBlogs = accessibleBlogs;
+		this.shareChanges = new BlogShareChanges(blog, aclCache, accessibleBlogs);
+		this.autocomplete = autocomplete;
+		this.visibilitySwitch = visibilitySwitch;
 	}
 
 
@@ -94,6 +113,7 @@ public class BlogController extends BaseController {
 			Map<String, fr.wseduc.webutils.security.SecuredAction> securedActions) {
 		super.init(vertx, config, rm, securedActions);
 		MongoDb mongo = MongoDb.getInstance();
+		this.linkerMaxPosts = config.getInteger("linker-max-posts", 1000);
 		this.timelineService = new DefaultBlogTimelineService(vertx, eb, config, new Neo(vertx, eb, log), mongo);
 		final Map<String, List<String>> groupedActions = new HashMap<>();
 		groupedActions.put("manager", loadManagerActions(securedActions.values()));
@@ -127,7 +147,7 @@ public class BlogController extends BaseController {
 					public void handle(final UserInfos user) {
 						if (user != null) {
 							final Handler<Either<String,JsonObject>> handler = eventHelper.onCreateResource(request, PRIVATE_RESOURCE_NAME,defaultResponseHandler(request));
-							blog.create(data, user, false, handler);
+							blog.create(data, user, false, blogCreated(user, handler));
 						} else {
 							unauthorized(request);
 						}
@@ -150,10 +170,11 @@ public class BlogController extends BaseController {
 				if (user != null) {
 					String visibility = data.getString("visibility");
 					if(visibility==null || "".equals(visibility)){
-						blog.update(user, blogId, data, defaultResponseHandler(request));
+						blog.update(user, blogId, data, invalidatingAcl(blogId, defaultResponseHandler(request)));
 					}else{
 						changeResourcesVisibility(blogId, data, user, visibility).setHandler(res->{
-							blog.update(user, blogId, data, defaultResponseHandler(request));
+							blog.update(user, blogId, data, invalidatingAcl(blogId,
+									switchingVisibility(res, blogId, user, visibility, defaultResponseHandler(request))));
 						});
 					}
 				} else {
@@ -177,7 +198,7 @@ public class BlogController extends BaseController {
 		}
 		getUserInfos(eb, request, user -> {
 			if (user != null) {
-				blog.delete(user, blogId, new Handler<Either<String, JsonObject>>() {
+				blog.delete(user, blogId, invalidatingAcl(blogId, new Handler<Either<String, JsonObject>>() {
 					@Override
 					public void handle(Either<String, JsonObject> event) {
 						if (event.isRight()) {
@@ -187,7 +208,7 @@ public class BlogController extends BaseController {
 							renderJson(request, error, 400);
 						}
 					}
-				});
+				}));
 			}else{
 				unauthorized(request);
 			}
@@ -218,7 +239,7 @@ public class BlogController extends BaseController {
 			@Override
 			public void handle(final UserInfos user) {
 				if (user != null) {
-					postService.counter(blogId, user, new Handler<Either<String, JsonArray>>() {
+					blogRights(request, blogId, user, rights -> postService.counter(blogId, user, rights, new Handler<Either<String, JsonArray>>() {
 						public void handle(Either<String, JsonArray> event) {
 							if (event.isLeft()) {
 								arrayResponseHandler(request).handle(event);
@@ -226,7 +247,7 @@ public class BlogController extends BaseController {
 								return;
 							}
 
-							final JsonArray blogs = event.right().getValue();
+							final JsonArray counts = event.right().getValue();
 
 							int countPublished = 0;
 							int countDraft = 0;
@@ -235,14 +256,15 @@ public class BlogController extends BaseController {
 
 							final JsonObject result = new JsonObject();
 
-							for (Object blogObj : blogs) {
-								final String blogState = ((JsonObject) blogObj).getString("state");
-								if (PostService.StateType.DRAFT.name().equals(blogState)) {
-									countDraft++;
-								} else if (PostService.StateType.PUBLISHED.name().equals(blogState)) {
-									countPublished++;
-								} else if (PostService.StateType.SUBMITTED.name().equals(blogState)) {
-									countSubmitted++;
+							for (Object countObj : counts) {
+								final String postState = ((JsonObject) countObj).getString("state");
+								final int count = ((JsonObject) countObj).getInteger("count", 0);
+								if (PostService.StateType.DRAFT.name().equals(postState)) {
+									countDraft += count;
+								} else if (PostService.StateType.PUBLISHED.name().equals(postState)) {
+									countPublished += count;
+								} else if (PostService.StateType.SUBMITTED.name().equals(postState)) {
+									countSubmitted += count;
 								}
 							}
 
@@ -255,7 +277,7 @@ public class BlogController extends BaseController {
 
 							Renders.renderJson(request, result);
 						}
-					});
+					}));
 				} else {
 					unauthorized(request);
 				}
@@ -263,6 +285,19 @@ public class BlogController extends BaseController {
 		});
 	}
 
+	/**
+	 * Rights of {@code user} on {@code blogId}: those attached by BlogResourcesProvider, otherwise those of the ACL
+	 * cache for the routes it does not filter, or null if they cannot be resolved (the services then query the blog).
+	 */
+	private void blogRights(HttpServerRequest request, String blogId, UserInfos user, Handler<BlogRights> handler) {
+		final BlogRights attached = BlogRights.of(request, blogId);
+		if (attached != null) {
+			handler.handle(attached);
+			return;
+		}
+		aclCache.rightsOf(blogId, user, event -> handler.handle(event.isRight() ? event.right().getValue() : null));
+	}
+
 	@Get("/list/all")
 	@SecuredAction("blog.list")
 	public void list(final HttpServerRequest request) {
@@ -298,32 +333,27 @@ public class BlogController extends BaseController {
 								return;
 							}
 
-							final AtomicInteger countdown = new AtomicInteger(blogs.size());
-							final Handler<Void> finalHandler = new Handler<Void>() {
-								public void handle(Void v) {
-									if (countdown.decrementAndGet() <= 0) {
-										renderJson(request, blogs);
-									}
-								}
-							};
 							if("true".equals(excludePost)){
 								renderJson(request, blogs);
 								return;
 							}
 
+							final List<String> blogIds = new ArrayList<>();
 							for (Object blogObj : blogs) {
-								final JsonObject blog = (JsonObject) blogObj;
-
-								postService.list(blog.getString("_id"), PostService.StateType.PUBLISHED, user, null, 2,
-										null, new Handler<Either<String, JsonArray>>() {
-											public void handle(Either<String, JsonArray> event) {
-												if (event.isRight()) {
-													blog.put("fetchPosts", event.right().getValue());
-												}
-												finalHandler.handle(null);
-											}
-										});
+								blogIds.add(((JsonObject) blogObj).getString("_id"));
 							}
+							postService.listLatestPublished(blogIds, 2, postsByBlog -> {
+								if (postsByBlog.isRight()) {
+									for (Object blogObj : blogs) {
+										final JsonObject blog = (JsonObject) blogObj;
+										blog.put("fetchPosts", postsByBlog.right().getValue()
+												.getJsonArray(blog.getString("_id"), new JsonArray()));
+									}
+								} else {
+									log.error("Failed to fetch latest posts: " + postsByBlog.left().getValue());
+								}
+								renderJson(request, blogs);
+							});
 
 						}
 					});
@@ -336,6 +366,15 @@ public class BlogController extends BaseController {
 
 	@Get("/linker")
 	public void listBlogsIds(final HttpServerRequest request) {
+		final int limit;
+		try {
+			limit = (request.params().get("limit") != null) ?
+					Math.max(1, Math.min(Integer.parseInt(request.params().get("limit")), linkerMaxPosts)) : linkerMaxPosts;
+		} catch (NumberFormatException e) {
+			badRequest(request, e.getMessage());
+			return;
+		}
+		final String prefix = request.params().get("prefix");
 		getUserInfos(eb, request, new Handler<UserInfos>() {
 			@Override
 			public void handle(final UserInfos user) {
@@ -354,29 +393,33 @@ public class BlogController extends BaseController {
 								return;
 							}
 
-							final AtomicInteger countdown = new AtomicInteger(blogs.size());
-							final Handler<Void> finalHandler = new Handler<Void>() {
-								public void handle(Void v) {
-									if (countdown.decrementAndGet() <= 0) {
-										renderJson(request, blogs);
-									}
-								}
-							};
-
+							// the linker only needs the blog header and the _id/title of its published posts
+							final Map<String, JsonObject> blogsById = new LinkedHashMap<>();
 							for (Object blogObj : blogs) {
-								final JsonObject blog = (JsonObject) blogObj;
-
-								postService.list(blog.getString("_id"), PostService.StateType.PUBLISHED, user, null, 0,
-										null, new Handler<Either<String, JsonArray>>() {
-											public void handle(Either<String, JsonArray> event) {
-												if (event.isRight()) {
-													blog.put("fetchPosts", event.right().getValue());
-												}
-												finalHandler.handle(null);
-											}
-										});
+								final JsonObject b = (JsonObject) blogObj;
+								blogsById.put(b.getString("_id"), new JsonObject()
+										.put("_id", b.getString("_id"))
+										.put("title", b.getString("title"))
+										.put("thumbnail", b.getString("thumbnail"))
+										.put("author", b.getJsonObject("author"))
+										.put("fetchPosts", new JsonArray()));
 							}
-
+							postService.listLinkable(new ArrayList<>(blogsById.keySet()), prefix, limit, posts -> {
+								if (posts.isLeft()) {
+									arrayResponseHandler(request).handle(posts);
+									return;
+								}
+								for (Object postObj : posts.right().getValue()) {
+									final JsonObject post = (JsonObject) postObj;
+									final JsonObject b = blogsById.get(post.getJsonObject("blog", new JsonObject()).getString("$id"));
+									if (b != null) {
+										b.getJsonArray("fetchPosts").add(new JsonObject()
+												.put("_id", post.getString("_id"))
+												.put("title", post.getString("title")));
+									}
+								}
+								renderJson(request, new JsonArray(new ArrayList<>(blogsById.values())));
+							});
 						}
 					});
 				} else {
@@ -386,6 +429,43 @@ public class BlogController extends BaseController {
 		});
 	}
 
+	@Get("/autocomplete")
+	@SecuredAction("blog.list")
+	public void autocomplete(final HttpServerRequest request) {
+		final int limit;
+		try {
+			limit = (request.params().get("limit") != null) ? Integer.parseInt(request.params().get("limit")) : 10;
+		} catch (NumberFormatException e) {
+			badRequest(request, e.getMessage());
+			return;
+		}
+		final String prefix = request.params().get("q");
+		getUserInfos(eb, request, user -> {
+			if (user == null) {
+				unauthorized(request);
+				return;
+			}
+			autocomplete.complete(user.getUserId(), user.getGroupsIds(), prefix, limit).onComplete(ar -> {
+				if (ar.succeeded()) {
+					renderJson(request, ar.result());
+				} else {
+					arrayResponseHandler(request).handle(new Either.Left<>(ar.cause().getMessage()));
+				}
+			});
+		});
+	}
+
+	@Get("/visibility/progress/:blogId")
+	@SecuredAction(value = "blog.manager", type = ActionType.RESOURCE)
+	public void visibilityProgress(final HttpServerRequest request) {
+		final String blogId = request.params().get("blogId");
+		if (blogId == null || blogId.trim().isEmpty()) {
+			badRequest(request);
+			return;
+		}
+		visibilitySwitch.progress(blogId, defaultResponseHandler(request));
+	}
+
 	@Get("/share/json/:blogId")
 	@SecuredAction(value = "blog.manager", type = ActionType.RESOURCE)
 	public void shareJson(final HttpServerRequest request) {
@@ -447,9 +527,9 @@ public class BlogController extends BaseController {
 								}
 							};
 							if (groupId != null) {
-								shareService.groupShare(user.getUserId(), groupId, blogId, actions, r);
+								shareService.groupShare(user.getUserId(), groupId, blogId, actions, sharesChanged(blogId, r));
 							} else if (userId != null) {
-								shareService.userShare(user.getUserId(), userId, blogId, actions, r);
+								shareService.userShare(user.getUserId(), userId, blogId, actions, sharesChanged(blogId, r));
 							} else {
 								badRequest(request);
 							}
@@ -486,9 +566,9 @@ public class BlogController extends BaseController {
 				final String groupId = request.formAttributes().get("groupId");
 				final String userId = request.formAttributes().get("userId");
 				if (groupId != null) {
-					shareService.removeGroupShare(groupId, blogId, actions, defaultResponseHandler(request));
+					shareService.removeGroupShare(groupId, blogId, actions, sharesChanged(blogId, defaultResponseHandler(request)));
 				} else if (userId != null) {
-					shareService.removeUserShare(userId, blogId, actions, defaultResponseHandler(request));
+					shareService.removeUserShare(userId, blogId, actions, sharesChanged(blogId, defaultResponseHandler(request)));
 				} else {
 					badRequest(request);
 				}
@@ -505,7 +585,7 @@ public class BlogController extends BaseController {
 			public void handle(final UserInfos user) {
 				if (user != null) {
 					RequestUtils.bodyToJson(request, share -> {
-						shareService.share(user.getUserId(), blogId, share, r -> {
+						shareService.share(user.getUserId(), blogId, share, sharesChanged(blogId, r -> {
 							if (r.isRight()) {
 								JsonArray nta = r.right().getValue().getJsonArray("notify-timeline-array");
 								boolean sendNotification = false;
@@ -520,7 +600,7 @@ public class BlogController extends BaseController {
 								JsonObject error = new JsonObject().put("error", r.left().getValue());
 								renderJson(request, error, 400);
 							}
-						});
+						}));
 					});
 				} else {
 					unauthorized(request);
@@ -529,6 +609,46 @@ public class BlogController extends BaseController {
 		});
 	}
 
+	/**
+	 * Drops the cached ACL of the blog, on every instance, once a change of its shares or author succeeded.
+	 */
+	private Handler<Either<String, JsonObject>> invalidatingAcl(final String blogId,
+			final Handler<Either<String, JsonObject>> handler) {
+		return event -> {
+			if (event.isRight()) {
+				aclCache.invalidate(blogId);
+			}
+			handler.handle(event);
+		};
+	}
+
+	/**
+	 * Once shares changed, propagates the change before answering.
+	 */
+	private Handler<Either<String, JsonObject>> sharesChanged(final String blogId,
+			final Handler<Either<String, JsonObject>> handler) {
+		return event -> {
+			if (event.isLeft()) {
+				handler.handle(event);
+				return;
+			}
+			shareChanges.changed(blogId, v -> handler.handle(event));
+		};
+	}
+
+	/**
+	 * Drops the cached accessible blogs of the author once their blog is created.
+	 */
+	private Handler<Either<String, JsonObject>> blogCreated(final UserInfos user,
+			final Handler<Either<String, JsonObject>> handler) {
+		return event -> {
+			if (event.isRight()) {
+				accessibleBlogs.invalidate(user.getUserId());
+			}
+			handler.handle(event);
+		};
+	}
+
 	private List<String> loadManagerActions(Collection<fr.wseduc.webutils.security.SecuredAction> actions) {
 		List<String> managerActions = new ArrayList<>();
 		if (actions != null) {
@@ -609,7 +729,7 @@ public class BlogController extends BaseController {
 					if (user != null) {
 						changeLogoVisibilityIfNeeded(data, VisibilityFilter.PUBLIC.name()).setHandler(res-> {
 							final Handler<Either<String,JsonObject>> handler = eventHelper.onCreateResource(request, PUBLIC_RESOURCE_NAME, defaultResponseHandler(request));
-							blog.create(data, user, true, handler);
+							blog.create(data, user, true, blogCreated(user, handler));
 						});
 					} else {
 						unauthorized(request);
@@ -639,7 +759,8 @@ public class BlogController extends BaseController {
 					if (user != null) {
 						String visibility = data.getString("visibility");
 						changeResourcesVisibility(blogId,data, user, visibility).setHandler(res->{
-							blog.update(user, blogId, data, defaultResponseHandler(request));
+							blog.update(user, blogId, data, invalidatingAcl(blogId,
+									switchingVisibility(res, blogId, user, visibility, defaultResponseHandler(request))));
 						});
 					} else {
 						unauthorized(request);
@@ -673,9 +794,22 @@ public class BlogController extends BaseController {
 		return future;
 	}
 
-	private Future<JsonArray> changeResourcesVisibility(String blogId, JsonObject data, UserInfos user, String visibility) {
+	/**
+	 * Once the blog is updated, starts the switch of the documents of its posts if its visibility changed and adds
+	 * its initial progress to the response, the following ones being polled on /visibility/progress/:blogId.
+	 */
+	private Handler<Either<String, JsonObject>> switchingVisibility(final AsyncResult<Boolean> changed, final String blogId,
+			final UserInfos user, final String visibility, final Handler<Either<String, JsonObject>> handler) {
+		return event -> {
+			if (event.isRight() && changed.succeeded() && Boolean.TRUE.equals(changed.result())) {
+				event.right().getValue().put(BlogVisibilitySwitch.FIELD, visibilitySwitch.start(blogId, user, visibility));
+			}
+			handler.handle(event);
+		};
+	}
+
+	private Future<Boolean> changeResourcesVisibility(String blogId, JsonObject data, UserInfos user, String visibility) {
 		final VisibilityFilter eVisibility = VisibilityFilter.valueOf(visibility);
-		final VisibilityFilter inverse = eVisibility.equals(VisibilityFilter.PUBLIC)?VisibilityFilter.OWNER:VisibilityFilter.PUBLIC;
 		//get old version of blog
 		Future<JsonObject> futureBlog = Future.future();
 		blog.get(blogId,res->{
@@ -711,76 +845,6 @@ public class BlogController extends BaseController {
 				future.complete(changed);
 			});
 			return future;
-		})//fetch post
-		.compose(changed ->{
-			if(!changed){
-				return Future.succeededFuture(new JsonArray());
-			}
-			Future<JsonArray> futureList = Future.future();
-			//fetch posts
-			postService.list(blogId, user, null, 0, "", null, true, event -> {
-				if (event.isRight()) {
-					JsonArray posts = event.right().getValue();
-					futureList.complete(posts);
-				}else{
-					futureList.fail(event.left().getValue());
-				}
-			});
-			return futureList;
-		})//transform content
-		.compose(posts -> {
-			if(posts.isEmpty()){
-				return Future.succeededFuture(new ArrayList<JsonObject>());
-			}
-			Future<List<JsonObject>> postToSave = Future.future();
-			Map<String, JsonObject> postByIds = new HashMap<>();
-			Map<String, List<String>> idsByPost = new HashMap<>();
-			List<String> allIds = new ArrayList<>();
-			for(Object elem : posts){
-				JsonObject post = (JsonObject)(elem);
-				String content = post.getString("content");
-				String id = post.getString("_id");
-				final List<String> currentIds = ResourceUtils.extractIds(content,inverse);
-				if(!currentIds.isEmpty()){
-					idsByPost.put(id,currentIds);
-					postByIds.put(id, post);
-				}
-				allIds.addAll(currentIds);
-			};
-			JsonObject j = new JsonObject()
-					.put("action", "changeVisibility")
-					.put("visibility", visibility)
-					.put("documentIds", new JsonArray(allIds));
-			if(allIds.size()>0){
-				eb.send("org.entcore.workspace", j, r -> {
-					List<JsonObject> toSave = new ArrayList<>(postByIds.values());
-					for(String postId : postByIds.keySet()){
-						JsonObject post = postByIds.get(postId);
-						String content = post.getString("content");
-						List<String> ids = idsByPost.get(postId);
-						content = ResourceUtils.transformUrlTo(content, ids,eVisibility);
-						post.put("content", content);
-					}
-					postToSave.complete(toSave);
-				});
-			}else{
-				postToSave.complete(new ArrayList<>());
-			}
-			return postToSave;
-		})//save post content
-		.compose(postsToSave->{
-			if(postsToSave.isEmpty()){
-				return Future.succeededFuture(new JsonArray());
-			}
-			Future<JsonArray> future = Future.future();
-			postService.updateAllContents(user, postsToSave, res->{
-				if(res.isRight()){
-					future.complete(res.right().getValue());
-				}else{
-					future.fail(res.left().getValue());
-				}
-			});
-			return future;
 		});
 	}
 
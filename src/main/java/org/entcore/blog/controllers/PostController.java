@@ -31,7 +31,9 @@ import java.util.Map;
 import java.util.Set;
 
 import org.entcore.blog.Blog;
+import org.entcore.blog.core.pagination.PostCursor;
 import org.entcore.blog.security.BlogResourcesProvider;
+import org.entcore.blog.security.BlogRights;
 import org.entcore.blog.services.BlogService;
 import org.entcore.blog.services.BlogTimelineService;
 import org.entcore.blog.services.PostService;
@@ -58,6 +60,7 @@ import fr.wseduc.webutils.request.RequestUtils;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
 public class PostController extends BaseController {
@@ -196,31 +199,48 @@ public class PostController extends BaseController {
 			return;
 		}
 
-		final int pagingSize = (page == null) ? 0 : this.pagingSize;
+		final PostCursor after;
+		try {
+			after = request.params().contains("after") ? PostCursor.decode(request.params().get("after")) : null;
+		} catch (IllegalArgumentException e) {
+			badRequest(request, e.getMessage());
+			return;
+		}
+
+		final int pagingSize = (page == null && after == null) ? 0 : this.pagingSize;
 
 		final boolean withContent = "true".equals(request.params().get("content"));
 
 		final String search = request.params().get("search");
 
+		final BlogRights rights = BlogRights.of(request, blogId);
+
 		UserUtils.getUserInfos(eb, request, new Handler<UserInfos>() {
 			@Override
 			public void handle(final UserInfos user) {
 				if (user != null) {
 					if (!StringUtils.isEmpty(postId)) {
-						post.listOne(blogId, postId, user, arrayResponseHandler(request));
+						post.listOne(blogId, postId, user, rights, arrayResponseHandler(request));
 					} else if (request.params().get("state") == null) {
 						final String statesParam = request.params().get("states");
 						final Set<String> states = new HashSet<String>();
 						if (!StringUtils.isEmpty(statesParam)) {
 							states.addAll(StringUtils.split(statesParam, ","));
 						}
-						if (withContent) {
-							post.listWithComments(blogId, user, page, pagingSize, search, states, true, arrayResponseHandler(request));
+						if (after != null && withContent) {
+							post.listWithCommentsAfter(blogId, user, rights, after, pagingSize, search, states, cursorResponseHandler(request, pagingSize));
+						} else if (after != null) {
+							post.listAfter(blogId, user, rights, after, pagingSize, search, states, cursorResponseHandler(request, pagingSize));
+						} else if (withContent) {
+							post.listWithComments(blogId, user, rights, page, pagingSize, search, states, true, arrayResponseHandler(request));
 						} else {
-							post.list(blogId, user, page, pagingSize, search, states, arrayResponseHandler(request));
+							post.list(blogId, user, rights, page, pagingSize, search, states, false, arrayResponseHandler(request));
 						}
+					} else if (after != null) {
+						post.listAfter(blogId, BlogResourcesProvider.getStateType(request), user, rights, after, pagingSize, search,
+								cursorResponseHandler(request, pagingSize));
 					} else {
-						post.list(blogId, BlogResourcesProvider.getStateType(request), user, page, pagingSize, search,
+						post.list(blogId, BlogResourcesProvider.getStateType(request), user, rights, page, pagingSize, search,
 								arrayResponseHandler(request));
 					}
 				} else {
@@ -386,7 +406,7 @@ public class PostController extends BaseController {
 			@Override
 			public void handle(final UserInfos user) {
 				if (user != null) {
-					post.deleteComment(blogId, commentId, user, defaultResponseHandler(request));
+					post.deleteComment(blogId, commentId, user, BlogRights.of(request, blogId), defaultResponseHandler(request));
 				} else {
 					unauthorized(request);
 				}
@@ -448,10 +468,36 @@ public class PostController extends BaseController {
 				badRequest(request, e.getMessage());
 				return;
 			}
-			final int pagingSize = (page == null) ? 0 : this.pagingSize;
+			final PostCursor after;
+			try {
+				after = request.params().contains("after") ? PostCursor.decode(request.params().get("after")) : null;
+			} catch (IllegalArgumentException e) {
+				badRequest(request, e.getMessage());
+				return;
+			}
+			final int pagingSize = (page == null && after == null) ? 0 : this.pagingSize;
 			final String search = request.params().get("search");
-			post.listPublic(blogId, page, pagingSize, search, arrayResponseHandler(request));
+			if (after != null) {
+				post.listPublicAfter(blogId, after, pagingSize, search, cursorResponseHandler(request, pagingSize));
+			} else {
+				post.listPublic(blogId, page, pagingSize, search, arrayResponseHandler(request));
+			}
 		});
 	}
 
+	/**
+	 * Renders a keyset page as {@code {"results": [...], "next": token}}, next is null on the last page.
+	 */
+	private Handler<Either<String, JsonArray>> cursorResponseHandler(final HttpServerRequest request, final int limit) {
+		return event -> {
+			if (event.isRight()) {
+				final JsonArray posts = event.right().getValue();
+				renderJson(request, new JsonObject().put("results", posts).put("next", PostCursor.next(posts, limit)));
+			} else {
+				JsonObject error = new JsonObject().put("error", event.left().getValue());
+				renderJson(request, error, 400);
+			}
+		};
+	}
+
 }
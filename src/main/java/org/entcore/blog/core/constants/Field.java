@@ -17,6 +17,10 @@ public class Field {
     public static final String PUBLISHED = "PUBLISHED";
     public static final String POST = "post";
     public static final String CONTENT = "content";
+    public static final String CONTENT_PLAIN = "contentPlain";
+    // lower-cased and accent-folded copies of the searched fields
+    public static final String TITLE_NORMALIZED = "titleNormalized";
+    public static final String DOCUMENT_IDS = "documentIds";
 
     private Field() {
         throw new IllegalStateException("Utility class");
@@ -0,0 +1,83 @@
+package org.entcore.blog.core.pagination;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position in a post listing sorted by {@code {sorted:-1, _id:-1}}.
+ * A cursor without position designates the first page.
+ */
+public class PostCursor {
+    public static final String SORTED = "sorted";
+    public static final String ID = "_id";
+    public static final JsonObject SORT = new JsonObject().put(SORTED, -1).put(ID, -1);
+    private static final PostCursor FIRST = new PostCursor(null, null);
+
+    private final Object sorted;
+    private final String id;
+
+    private PostCursor(Object sorted, String id) {
+        this.sorted = sorted;
+        this.id = id;
+    }
+
+    public static PostCursor first() {
+        return FIRST;
+    }
+
+    /**
+     * @param token token previously returned by {@link #next(JsonArray, int)}, an empty token starts at the first page
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static PostCursor decode(final String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return FIRST;
+        }
+        try {
+            final JsonObject json = new JsonObject(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+            final Object sorted = json.getValue(SORTED);
+            final String id = json.getString(ID);
+            if (sorted == null || id == null) {
+                throw new IllegalArgumentException("invalid.cursor");
+            }
+            return new PostCursor(sorted, id);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid.cursor");
+        }
+    }
+
+    /**
+     * @return the token designating the page following {@code posts}, or null if {@code posts} is the last page
+     */
+    public static String next(final JsonArray posts, final int limit) {
+        if (posts == null || posts.isEmpty() || posts.size() < limit) {
+            return null;
+        }
+        final JsonObject last = posts.getJsonObject(posts.size() - 1);
+        if (last == null || last.getValue(SORTED) == null || last.getString(ID) == null) {
+            return null;
+        }
+        final JsonObject json = new JsonObject().put(SORTED, last.getValue(SORTED)).put(ID, last.getString(ID));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.encode().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isFirst() {
+        return id == null;
+    }
+
+    /**
+     * Restricts {@code query} to the posts located strictly after this cursor.
+     */
+    public JsonObject restrict(final JsonObject query) {
+        if (isFirst()) {
+            return query;
+        }
+        final JsonObject after = new JsonObject().put("$or", new JsonArray()
+                .add(new JsonObject().put(SORTED, new JsonObject().put("$lt", sorted)))
+                .add(new JsonObject().put(SORTED, sorted).put(ID, new JsonObject().put("$lt", id))));
+        return new JsonObject().put("$and", new JsonArray().add(query).add(after));
+    }
+}
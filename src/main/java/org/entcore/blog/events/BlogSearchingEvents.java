@@ -33,8 +33,12 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import org.entcore.blog.core.constants.Field;
+import org.entcore.blog.search.AccessibleBlogs;
 import org.entcore.blog.search.BlogSearch;
+import org.entcore.blog.search.BlogSearchIndex;
 import org.entcore.blog.search.PostSearch;
+import org.entcore.blog.search.SearchResultCache;
+import org.entcore.blog.search.SearchResults;
 import org.entcore.common.search.SearchingEvents;
 
 import java.util.List;
@@ -44,9 +48,20 @@ public class BlogSearchingEvents implements SearchingEvents {
 
     private static final Logger log = LoggerFactory.getLogger(BlogSearchingEvents.class);
     private final List<String> searchingOnList;
+    private final BlogSearchIndex searchIndex;
+    private final AccessibleBlogs accessibleBlogs;
+    private final SearchResultCache resultCache;
 
     public BlogSearchingEvents(List<String> searchingOnList) {
+        this(searchingOnList, new AccessibleBlogs(), null, null);
+    }
+
+    public BlogSearchingEvents(List<String> searchingOnList, AccessibleBlogs accessibleBlogs, BlogSearchIndex searchIndex,
+                               SearchResultCache resultCache) {
         this.searchingOnList = searchingOnList;
+        this.accessibleBlogs = accessibleBlogs;
+        this.searchIndex = searchIndex;
+        this.resultCache = resultCache;
     }
 
     @Override
@@ -63,19 +78,29 @@ public class BlogSearchingEvents implements SearchingEvents {
                     .map(String.class::cast)
                     .collect(Collectors.toList());
 
-            PostSearch postSearch = new PostSearch();
-            BlogSearch blogSearch = new BlogSearch();
-            Future<JsonArray> postFuture = this.searchingOnList.contains(Field.POST) ? postSearch.get(userId, groupIdList, searchWordsList, page, limit) : Future.succeededFuture(new JsonArray());
-
-            Future<JsonArray> blogFuture = this.searchingOnList.contains(Field.BLOG) ? blogSearch.get(userId, groupIdList, searchWordsList, page, limit) : Future.succeededFuture(new JsonArray());
-
-            CompositeFuture.all(postFuture, blogFuture)
-                    .onSuccess(compositeFuture -> {
-                        JsonArray postFormatted = postSearch.formatSearchResult(postFuture.result(), columnsHeader);
-                        JsonArray blogFormatted = blogSearch.formatSearchResult(blogFuture.result(), columnsHeader);
-
-                        handler.handle(new Right<>(new JsonArray().addAll(blogFormatted).addAll(postFormatted)));
+            final int pageIndex = SearchResults.page(page);
+            final int pageSize = SearchResults.limit(limit);
+            if (!SearchResults.servable(pageIndex, pageSize)) {
+                handler.handle(new Either.Left<>(SearchResults.PAGE_TOO_DEEP));
+                return;
+            }
+            // read before searching, so that results overlapping a write are not cached
+            final long version = resultCache == null ? 0 : resultCache.version();
+            accessibleBlogs.get(userId, groupIdList)
+                    .compose(blogIds -> {
+                        final String key = resultCache == null ? null : resultCache.key(searchWordsList, blogIds, pageIndex, pageSize, columnsHeader);
+                        final JsonArray cached = key == null ? null : resultCache.get(key);
+                        if (cached != null) {
+                            return Future.succeededFuture(cached);
+                        }
+                        return search(userId, groupIdList, blogIds, searchWordsList, pageIndex, pageSize, columnsHeader)
+                                .onSuccess(results -> {
+                                    if (key != null) {
+                                        resultCache.put(key, version, results);
+                                    }
+                                });
                     })
+                    .onSuccess(results -> handler.handle(new Right<>(results)))
                     .onFailure(throwable -> {
                         log.error(String.format("[blog@%s::searchResource] Failed to search resource %s:%s", this.getClass().getSimpleName(), throwable.getClass().getSimpleName(), throwable.getMessage()));
                         handler.handle(new Either.Left<>(throwable.getMessage()));
@@ -84,4 +109,57 @@ public class BlogSearchingEvents implements SearchingEvents {
             handler.handle(new Right<>(new JsonArray()));
         }
     }
+
+    private Future<JsonArray> search(String userId, List<String> groupIdList, List<String> blogIds, List<String> searchWordsList,
+                                     int pageIndex, int pageSize, JsonArray columnsHeader) {
+        PostSearch postSearch = new PostSearch(accessibleBlogs);
+        BlogSearch blogSearch = new BlogSearch();
+        if (searchIndex != null && searchIndex.isReady()) {
+            // the index merges the hits itself, most recently modified first as it keeps no text score, and reads
+            // only the page served
+            return searchIndex.search(blogIds, searchWordsList, this.searchingOnList.contains(Field.POST),
+                    this.searchingOnList.contains(Field.BLOG), pageIndex * pageSize, pageSize).map(page -> {
+                JsonArray postFormatted = postSearch.formatSearchResult(page.getJsonArray("posts"), columnsHeader, searchWordsList);
+                JsonArray blogFormatted = blogSearch.formatSearchResult(page.getJsonArray("blogs"), columnsHeader);
+                return SearchResults.mergeByDate(blogFormatted, postFormatted, columnsHeader.getString(2), 0, pageSize);
+            });
+        }
+        // both sources return their first results up to the requested page, best text score first, merged below
+        final int window = SearchResults.window(pageIndex, pageSize);
+        Future<JsonArray> postFuture = this.searchingOnList.contains(Field.POST) ? postSearch.get(blogIds, searchWordsList, 0, window) : Future.succeededFuture(new JsonArray());
+        Future<JsonArray> blogFuture = this.searchingOnList.contains(Field.BLOG) ? blogSearch.get(userId, groupIdList, searchWordsList, 0, window) : Future.succeededFuture(new JsonArray());
+
+        return CompositeFuture.all(postFuture, blogFuture).compose(compositeFuture -> {
+            // the raw hits are merged: only the page served is formatted, and only its posts read their content
+            final JsonArray page = SearchResults.mergeTopK(blogFuture.result(), postFuture.result(),
+                    pageIndex * pageSize, pageSize);
+            final JsonArray pagePosts = new JsonArray();
+            final JsonArray pageBlogs = new JsonArray();
+            for (Object hit : page) {
+                (isPost(hit) ? pagePosts : pageBlogs).add(hit);
+            }
+            return postSearch.loadContent(pagePosts).map(posts -> {
+                final JsonArray postFormatted = postSearch.formatSearchResult(posts, columnsHeader, searchWordsList);
+                final JsonArray blogFormatted = blogSearch.formatSearchResult(pageBlogs, columnsHeader);
+                // back in the order of the page
+                final JsonArray results = new JsonArray();
+                int i = 0, j = 0;
+                for (Object hit : page) {
+                    if (isPost(hit)) {
+                        if (j < postFormatted.size()) results.add(postFormatted.getValue(j++));
+                    } else if (i < blogFormatted.size()) {
+                        results.add(blogFormatted.getValue(i++));
+                    }
+                }
+                return results;
+            });
+        });
+    }
+
+    /**
+     * @return whether a raw hit is a post: posts reference their blog, blogs do not
+     */
+    private static boolean isPost(Object hit) {
+        return ((JsonObject) hit).containsKey(Field.BLOG);
+    }
 }
@@ -2,12 +2,14 @@ package org.entcore.blog.explorer;
 
 import fr.wseduc.webutils.security.SecuredAction;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.mongo.MongoClient;
 import org.entcore.blog.Blog;
+import org.entcore.blog.security.BlogPrincipals;
 import org.entcore.common.explorer.ExplorerMessage;
 import org.entcore.common.explorer.ExplorerPluginFactory;
 import org.entcore.common.explorer.IExplorerPlugin;
@@ -30,6 +32,7 @@ public class BlogExplorerPlugin extends ExplorerPluginResourceMongo {
     private final PostExplorerPlugin postPlugin;
     private ShareService shareService;
     private final Map<String, SecuredAction> securedActions;
+    private Handler<String> sharesChangedHandler;
 
     public static BlogExplorerPlugin create(final Map<String, SecuredAction> securedActions) throws Exception {
         final IExplorerPlugin plugin = ExplorerPluginFactory.createMongoPlugin((params)->{
@@ -59,6 +62,14 @@ public class BlogExplorerPlugin extends ExplorerPluginResourceMongo {
         return this.shareService;
     }
 
+    /**
+     * @param handler called with the id of a blog whose principals no longer match its shares when it is sent to the
+     *                explorer, that is once its shares were changed outside of the blog routes (explorer share)
+     */
+    public void setSharesChangedHandler(final Handler<String> handler) {
+        this.sharesChangedHandler = handler;
+    }
+
     @Override
     protected Optional<ShareService> getShareService() {
         return Optional.ofNullable(shareService);
@@ -74,6 +85,11 @@ public class BlogExplorerPlugin extends ExplorerPluginResourceMongo {
     protected Future<ExplorerMessage> doToMessage(final ExplorerMessage message, final JsonObject source) {
         final Optional<String> creatorId = getCreatorForModel(source).map(e -> e.getUserId());
         final ShareModel shareModel = new ShareModel(source.getJsonArray("shared", new JsonArray()), securedActions, creatorId);
+        // only full documents carry the shares, partial updates of the blog routes leave them out
+        if (sharesChangedHandler != null && source.containsKey("shared") && source.getString("_id") != null
+                && !BlogPrincipals.of(source).equals(source.getJsonObject(BlogPrincipals.FIELD))) {
+            sharesChangedHandler.handle(source.getString("_id"));
+        }
         final JsonObject custom = new JsonObject().put("slug", source.getString("slug", ""));
         custom.put("publish-type", source.getString("publish-type", ""));
         message.withName(source.getString("title", ""));
@@ -0,0 +1,158 @@
+package org.entcore.blog.search;
+
+import com.mongodb.QueryBuilder;
+import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.mongodb.MongoQueryBuilder;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import org.entcore.blog.Blog;
+import org.entcore.blog.security.BlogPrincipals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.entcore.common.mongodb.MongoDbResult.validResultsHandler;
+
+/**
+ * Ids of the blogs a user is author of or is shared with, the access filter of searches.
+ * When created with {@link #create(Vertx, JsonObject)}, the ids are kept per user as a sorted array for
+ * {@code ttl} ms, for the same groups only. Entries are dropped on every instance through {@link #ADDRESS}:
+ * those of a user when they create a blog, all of them when the shares of a blog change.
+ */
+public class AccessibleBlogs {
+    public static final String ADDRESS = "blog.search.accessible.invalidate";
+    private static final String USER_ID = "userId";
+    private final MongoDb mongo;
+    private final Vertx vertx;
+    private final long ttl;
+    private final Map<String, Entry> entries;
+    private long version = 0;
+    private MessageConsumer<JsonObject> consumer;
+
+    public AccessibleBlogs() {
+        this(null, 0, 0);
+    }
+
+    public AccessibleBlogs(Vertx vertx, long ttl, final int maxSize) {
+        this.mongo = MongoDb.getInstance();
+        this.vertx = vertx;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static AccessibleBlogs create(Vertx vertx, JsonObject config) {
+        return new AccessibleBlogs(vertx, config.getLong("search-accessible-blogs-ttl", 30000L),
+                config.getInteger("search-accessible-blogs-max-size", 10000));
+    }
+
+    public void start() {
+        if (vertx != null && consumer == null) {
+            consumer = vertx.eventBus().consumer(ADDRESS, message -> evict(message.body().getString(USER_ID)));
+        }
+    }
+
+    public void stop() {
+        if (consumer != null) {
+            consumer.unregister();
+            consumer = null;
+        }
+    }
+
+    /**
+     * Drops the cached ids of {@code userId}, or of every user if null, on every instance of the cluster.
+     */
+    public void invalidate(String userId) {
+        evict(userId);
+        if (vertx != null) {
+            vertx.eventBus().publish(ADDRESS, new JsonObject().put(USER_ID, userId));
+        }
+    }
+
+    /**
+     * @return the accessible blog ids, sorted
+     */
+    public Future<List<String>> get(String userId, List<String> groupIds) {
+        final String[] groups = groupIds.toArray(new String[0]);
+        Arrays.sort(groups);
+        final long loadVersion;
+        if (ttl > 0) {
+            synchronized (entries) {
+                final Entry cached = entries.get(userId);
+                if (cached != null && System.currentTimeMillis() - cached.loadedAt < ttl && Arrays.equals(cached.groupIds, groups)) {
+                    return Future.succeededFuture(cached.blogIds());
+                }
+                loadVersion = version;
+            }
+        } else {
+            loadVersion = -1;
+        }
+
+        Promise<List<String>> promise = Promise.promise();
+        final QueryBuilder rightsQuery = QueryBuilder.start(BlogPrincipals.path(BlogPrincipals.ALL))
+                .in(BlogPrincipals.ids(userId, groupIds));
+
+        final JsonObject projection = new JsonObject();
+        projection.put("_id", 1);
+        mongo.find(Blog.BLOGS_COLLECTION, MongoQueryBuilder.build(rightsQuery), null, projection, validResultsHandler(result -> {
+            if (result.isRight()) {
+                final String[] blogIds = result.right().getValue().stream()
+                        .filter(JsonObject.class::isInstance)
+                        .map(JsonObject.class::cast)
+                        .map(blogInfo -> blogInfo.getString("_id"))
+                        .toArray(String[]::new);
+                Arrays.sort(blogIds);
+                final Entry entry = new Entry(groups, blogIds);
+                if (ttl > 0) {
+                    synchronized (entries) {
+                        // a load overlapping an invalidation could hold ids from before the share change
+                        if (version == loadVersion) {
+                            entries.put(userId, entry);
+                        }
+                    }
+                }
+                promise.complete(entry.blogIds());
+            } else {
+                promise.fail(result.left().getValue());
+            }
+        }));
+
+        return promise.future();
+    }
+
+    private void evict(String userId) {
+        synchronized (entries) {
+            version++;
+            if (userId == null) {
+                entries.clear();
+            } else {
+                entries.remove(userId);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final String[] groupIds;
+        private final String[] blogIds;
+        private final long loadedAt = System.currentTimeMillis();
+
+        private Entry(String[] groupIds, String[] blogIds) {
+            this.groupIds = groupIds;
+            this.blogIds = blogIds;
+        }
+
+        private List<String> blogIds() {
+            return Collections.unmodifiableList(Arrays.asList(blogIds));
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.entcore.blog.search;
 
-import com.mongodb.DBObject;
 import com.mongodb.QueryBuilder;
 import fr.wseduc.mongodb.MongoDb;
 import fr.wseduc.mongodb.MongoQueryBuilder;
@@ -11,16 +10,26 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import org.entcore.blog.core.constants.Field;
+import org.entcore.blog.security.BlogPrincipals;
+import org.entcore.common.service.impl.MongoDbSearchService;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static org.entcore.common.mongodb.MongoDbResult.validResultsHandler;
 
 public class BlogSearch implements ISearch {
     private static final Logger log = LoggerFactory.getLogger(BlogSearch.class);
+    private static final JsonObject TEXT_SCORE = new JsonObject().put("$meta", "textScore");
+    // the fields read by formatSearchResult
+    private static final JsonObject PROJECTION = new JsonObject()
+            .put(SearchResults.SCORE, TEXT_SCORE)
+            .put(Field._ID, 1)
+            .put(Field.TITLE, 1)
+            .put(Field.DESCRIPTION, 1)
+            .put(Field.MODIFIED, 1)
+            .put("author.userId", 1)
+            .put("author.username", 1);
     private final MongoDb mongo;
 
     public BlogSearch() {
@@ -30,7 +39,12 @@ public class BlogSearch implements ISearch {
     @Override
     public Future<JsonArray> get(String userId, List<String> groupIds, List<String> searchWords, Integer page, Integer limit) {
         Promise<JsonArray> promise = Promise.promise();
-        mongo.find(Field.BLOG_COLLECTION, MongoQueryBuilder.build(getMongoBuilder(userId, groupIds, searchWords)), validResultsHandler(result -> {
+        final int pageSize = SearchResults.cap(limit);
+        final int skip = SearchResults.page(page) * pageSize;
+        // best matches first, same order as the post search so that SearchResults.mergeTopK merges sorted lists
+        final JsonObject sort = new JsonObject().put(SearchResults.SCORE, TEXT_SCORE).put(Field._ID, -1);
+        mongo.find(Field.BLOG_COLLECTION, MongoQueryBuilder.build(getMongoBuilder(userId, groupIds, searchWords)), sort,
+                PROJECTION, skip == 0 ? -1 : skip, pageSize, pageSize, validResultsHandler(result -> {
             if (result.isRight()) {
                 promise.complete(result.right().getValue());
             } else {
@@ -42,21 +56,14 @@ public class BlogSearch implements ISearch {
     }
 
     private QueryBuilder getMongoBuilder(String userId, List<String> groupIds, List<String> searchWordsArray) {
-        final List<DBObject> groups = new ArrayList<>();
-        groups.add(QueryBuilder.start(Field.USERID).is(userId).get());
-        for (String gpId : groupIds) {
-            groups.add(QueryBuilder.start(Field.GROUPID).is(gpId).get());
-        }
-        final QueryBuilder worldsQuery = QueryBuilder.start();
-        worldsQuery.and(searchWordsArray.stream().map(s -> QueryBuilder.start(Field.TITLE).regex(Pattern.compile("(^|$|\\W)" + s + "(^|$|\\W)", (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE))).get())
-                .toArray(DBObject[]::new));
+        // served by the title text index, case and accent insensitive, every word is required as in the former regex search
+        final QueryBuilder worldsQuery = new QueryBuilder()
+                .text(MongoDbSearchService.textSearchedComposition(SearchWordTokenizer.normalize(searchWordsArray)));
         return new QueryBuilder().and(worldsQuery.get(),
                 new QueryBuilder().or(
                         QueryBuilder.start(Field.VISIBILITY).is(Field.PUBLIC).get(),
-                        QueryBuilder.start("author.userId").is(userId).get(),
-                        QueryBuilder.start(Field.SHARED).elemMatch(
-                                new QueryBuilder().or(groups.toArray(new DBObject[0])).get()
-                        ).get()).get());
+                        QueryBuilder.start(BlogPrincipals.path(BlogPrincipals.ALL)).in(BlogPrincipals.ids(userId, groupIds)).get()
+                ).get());
     }
 
     @Override
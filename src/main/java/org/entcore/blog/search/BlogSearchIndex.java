@@ -0,0 +1,451 @@
+package org.entcore.blog.search;
+
+import fr.wseduc.mongodb.MongoDb;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.blog.Blog;
+import org.entcore.blog.core.constants.Field;
+import org.entcore.blog.search.index.InvertedIndex;
+import org.entcore.blog.search.index.PrefixIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.entcore.common.mongodb.MongoDbResult.validResultsHandler;
+
+/**
+ * In-process search index of blogs and published posts, so that searches do not scan Mongo.
+ * It is built from Mongo at startup (after loading the local snapshot, only documents modified since are fetched)
+ * and kept up to date by the changes published on {@link SearchUpdates#ADDRESS} by the services of every instance.
+ * The titles are also kept in a {@link PrefixIndex} serving the autocompletion. The index only holds what filters and
+ * sorts the hits, the displayed fields of the page served are read from Mongo.
+ */
+public class BlogSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(BlogSearchIndex.class);
+    private static final String POST = "post:";
+    private static final String BLOG = "blog:";
+    private static final int PAGE_SIZE = 500;
+    private static final int MAX_COMPLETION_SCAN = 20000;
+    private static final JsonObject POST_KEYS = new JsonObject().put("title", 1).put("contentPlain", 1).put("blog", 1)
+            .put("state", 1).put("modified", 1);
+    private static final JsonObject BLOG_KEYS = new JsonObject().put("title", 1).put("visibility", 1).put("modified", 1);
+    private static final JsonObject POST_DISPLAY_KEYS = new JsonObject().put("title", 1).put("contentPlain", 1).put("blog", 1)
+            .put("modified", 1).put("author.userId", 1).put("author.username", 1);
+    private static final JsonObject BLOG_DISPLAY_KEYS = new JsonObject().put("title", 1).put("description", 1)
+            .put("modified", 1).put("author.userId", 1).put("author.username", 1);
+
+    private final Vertx vertx;
+    private final MongoDb mongo;
+    private final String snapshotPath;
+    private final long snapshotInterval;
+    private final String deploymentId;
+    private final InvertedIndex index = new InvertedIndex();
+    private final PrefixIndex titles = new PrefixIndex();
+    private volatile boolean ready = false;
+    private MessageConsumer<JsonObject> consumer;
+    private long timerId = -1;
+
+    /**
+     * @param snapshotPath snapshot of this instance, null for none
+     */
+    public BlogSearchIndex(Vertx vertx, MongoDb mongo, String snapshotPath, long snapshotInterval) {
+        this.vertx = vertx;
+        this.mongo = mongo;
+        this.snapshotPath = snapshotPath;
+        this.snapshotInterval = snapshotInterval;
+        this.deploymentId = vertx.getOrCreateContext().deploymentID();
+    }
+
+    /**
+     * @return the index configured by {@code search-index}, or null if it is not enabled. The snapshot path is
+     * suffixed by {@code instance-id}, the host name by default, so that instances sharing a volume keep their own.
+     */
+    public static BlogSearchIndex create(Vertx vertx, MongoDb mongo, JsonObject config) {
+        final JsonObject conf = config.getJsonObject("search-index", new JsonObject());
+        if (!conf.getBoolean("enabled", false)) {
+            return null;
+        }
+        final String snapshotPath = conf.getString("snapshot-path");
+        return new BlogSearchIndex(vertx, mongo, snapshotPath == null ? null : snapshotPath + "." + instanceId(conf),
+                conf.getLong("snapshot-interval", 300000L));
+    }
+
+    private static String instanceId(JsonObject conf) {
+        final String instanceId = conf.getString("instance-id");
+        if (instanceId != null && !instanceId.isEmpty()) {
+            return instanceId;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "local";
+        }
+    }
+
+    public void start() {
+        consumer = vertx.eventBus().consumer(SearchUpdates.ADDRESS, message -> apply(message.body()));
+        loadSnapshot()
+                .compose(v -> reconcile(BLOG, Blog.BLOGS_COLLECTION, new JsonObject(), BLOG_KEYS))
+                .compose(v -> reconcile(POST, Blog.POSTS_COLLECTION, new JsonObject().put("state", Field.PUBLISHED), POST_KEYS))
+                .onComplete(ar -> {
+                    if (ar.succeeded()) {
+                        ready = true;
+                        log.info(String.format("[Blog@%s::start] Search index ready with %d documents", this.getClass().getSimpleName(), index.size()));
+                    } else {
+                        log.error(String.format("[Blog@%s::start] Failed to build search index, searches stay on Mongo: %s", this.getClass().getSimpleName(), ar.cause().getMessage()));
+                    }
+                });
+        if (snapshotPath != null && snapshotInterval > 0) {
+            timerId = vertx.setPeriodic(snapshotInterval, id -> writeSnapshot());
+        }
+    }
+
+    public Future<Void> stop() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        if (consumer != null) {
+            consumer.unregister();
+            consumer = null;
+        }
+        return writeSnapshot();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @param blogIds sorted ids of the accessible blogs, as returned by {@link AccessibleBlogs}
+     * @param posts whether to search the published posts of {@code blogIds}
+     * @param blogs whether to search the public blogs and the blogs of {@code blogIds}, by title
+     * @return the {@code limit} hits containing every search word following the first {@code skip} ones, most
+     * recently modified first, as {@code {"posts": [...], "blogs": [...]}}
+     */
+    public Future<JsonObject> search(List<String> blogIds, List<String> searchWords, boolean posts, boolean blogs,
+                                     int skip, int limit) {
+        final Set<String> terms = terms(searchWords);
+        final List<InvertedIndex.Document> postHits = posts ? index.search(terms,
+                doc -> doc.getKey().startsWith(POST) && Collections.binarySearch(blogIds, doc.getBlogId()) >= 0) :
+                Collections.emptyList();
+        final List<InvertedIndex.Document> blogHits = blogs ? index.search(terms,
+                doc -> doc.getKey().startsWith(BLOG) && (doc.isVisibleToAll() || Collections.binarySearch(blogIds, doc.getBlogId()) >= 0)) :
+                Collections.emptyList();
+        // same merge as SearchResults.mergeByDate, on the indexed dates, so that only the page served is read
+        final List<String> postIds = new ArrayList<>();
+        final List<String> blogIdsOfPage = new ArrayList<>();
+        int i = 0, j = 0, rank = 0;
+        while ((i < blogHits.size() || j < postHits.size()) && postIds.size() + blogIdsOfPage.size() < limit) {
+            final boolean blog = j >= postHits.size() ||
+                    (i < blogHits.size() && blogHits.get(i).getModified() >= postHits.get(j).getModified());
+            final InvertedIndex.Document next = blog ? blogHits.get(i++) : postHits.get(j++);
+            if (rank++ >= skip) {
+                (blog ? blogIdsOfPage : postIds).add(next.getKey().substring((blog ? BLOG : POST).length()));
+            }
+        }
+        final Future<JsonArray> postPage = load(Blog.POSTS_COLLECTION, POST_DISPLAY_KEYS, postIds);
+        final Future<JsonArray> blogPage = load(Blog.BLOGS_COLLECTION, BLOG_DISPLAY_KEYS, blogIdsOfPage);
+        return CompositeFuture.all(postPage, blogPage).map(v -> new JsonObject()
+                .put("posts", postPage.result())
+                .put("blogs", blogPage.result()));
+    }
+
+    /**
+     * @return the documents {@code ids} still in {@code collection}, in the order of {@code ids}
+     */
+    private Future<JsonArray> load(String collection, JsonObject keys, List<String> ids) {
+        if (ids.isEmpty()) {
+            return Future.succeededFuture(new JsonArray());
+        }
+        final Promise<JsonArray> promise = Promise.promise();
+        final JsonObject query = new JsonObject().put("_id", new JsonObject().put("$in", new JsonArray(ids)));
+        mongo.find(collection, query, null, keys, validResultsHandler(result -> {
+            if (result.isLeft()) {
+                promise.fail(result.left().getValue());
+                return;
+            }
+            final Map<String, JsonObject> found = new HashMap<>();
+            for (Object o : result.right().getValue()) {
+                if (o instanceof JsonObject) {
+                    found.put(((JsonObject) o).getString("_id"), (JsonObject) o);
+                }
+            }
+            final JsonArray ordered = new JsonArray();
+            for (String id : ids) {
+                if (found.containsKey(id)) {
+                    ordered.add(found.get(id));
+                }
+            }
+            promise.complete(ordered);
+        }));
+        return promise.future();
+    }
+
+    /**
+     * @param blogIds sorted ids of the accessible blogs, as returned by {@link AccessibleBlogs}
+     * @return public blogs and blogs of {@code blogIds}, then the published posts of {@code blogIds}, with a title
+     * starting with {@code prefix}: the same entries, in the same order, as {@link TitleAutocomplete} from Mongo
+     */
+    public JsonArray complete(List<String> blogIds, String prefix, int limit) {
+        final JsonArray results = new JsonArray();
+        for (PrefixIndex.Entry entry : titles.complete(prefix, e -> e.getKey().startsWith(BLOG) &&
+                (e.isVisibleToAll() || Collections.binarySearch(blogIds, e.getBlogId()) >= 0), limit, MAX_COMPLETION_SCAN)) {
+            results.add(entry.getValue().copy());
+        }
+        if (results.size() >= limit) {
+            return results;
+        }
+        for (PrefixIndex.Entry entry : titles.complete(prefix, e -> e.getKey().startsWith(POST) &&
+                Collections.binarySearch(blogIds, e.getBlogId()) >= 0, limit - results.size(), MAX_COMPLETION_SCAN)) {
+            results.add(entry.getValue().copy());
+        }
+        return results;
+    }
+
+    private static Set<String> terms(List<String> searchWords) {
+        final Set<String> terms = new LinkedHashSet<>();
+        for (String word : searchWords) {
+            terms.addAll(SearchWordTokenizer.terms(word));
+        }
+        return terms;
+    }
+
+    private void apply(JsonObject change) {
+        final String type = change.getString(SearchUpdates.TYPE);
+        final String id = change.getString(SearchUpdates.ID);
+        final boolean removed = change.getBoolean(SearchUpdates.REMOVED, false);
+        if (SearchUpdates.BLOG.equals(type) && removed) {
+            remove(BLOG + id);
+            removeIf(doc -> doc.getKey().startsWith(POST) && id.equals(doc.getBlogId()));
+        } else if (SearchUpdates.BLOG.equals(type)) {
+            fetch(BLOG, Blog.BLOGS_COLLECTION, BLOG_KEYS, Collections.singletonList(id));
+        } else if (SearchUpdates.POST.equals(type) && removed) {
+            remove(POST + id);
+        } else if (SearchUpdates.POST.equals(type)) {
+            fetch(POST, Blog.POSTS_COLLECTION, POST_KEYS, Collections.singletonList(id));
+        }
+    }
+
+    /**
+     * Pages through the collection by _id, re-indexes the documents whose modification date or visibility differs
+     * from the indexed one, then drops the indexed documents which are no longer in the collection.
+     */
+    private Future<Void> reconcile(String prefix, String collection, JsonObject filter, JsonObject keys) {
+        final Set<String> seen = new HashSet<>();
+        return reconcilePage(prefix, collection, filter, keys, null, seen).map(v -> {
+            removeIf(doc -> doc.getKey().startsWith(prefix) && !seen.contains(doc.getKey()));
+            return null;
+        });
+    }
+
+    private Future<Void> reconcilePage(String prefix, String collection, JsonObject filter, JsonObject keys,
+                                       String lastId, Set<String> seen) {
+        final JsonObject query = filter.copy();
+        if (lastId != null) {
+            query.put("_id", new JsonObject().put("$gt", lastId));
+        }
+        final Promise<JsonArray> promise = Promise.promise();
+        // a visibility switch leaves the modification date of the blog as is
+        final JsonObject rowKeys = new JsonObject().put("_id", 1).put("modified", 1).put("visibility", 1);
+        mongo.find(collection, query, new JsonObject().put("_id", 1), rowKeys,
+                0, PAGE_SIZE, PAGE_SIZE, validResultsHandler(result -> complete(promise, result.isRight() ? result.right().getValue() : null,
+                        result.isLeft() ? result.left().getValue() : null)));
+        return promise.future().compose(rows -> {
+            final List<String> stale = new ArrayList<>();
+            String last = null;
+            for (Object o : rows) {
+                if (!(o instanceof JsonObject)) continue;
+                final JsonObject row = (JsonObject) o;
+                last = row.getString("_id");
+                seen.add(prefix + last);
+                final InvertedIndex.Document indexed = index.get(prefix + last);
+                if (indexed == null || indexed.getModified() != SearchResults.millis(row.getValue("modified")) ||
+                        (BLOG.equals(prefix) && indexed.isVisibleToAll() != Field.PUBLIC.equals(row.getString("visibility")))) {
+                    stale.add(last);
+                }
+            }
+            final String next = last;
+            return fetch(prefix, collection, keys, stale).compose(v -> rows.size() < PAGE_SIZE || next == null ?
+                    Future.succeededFuture() : reconcilePage(prefix, collection, filter, keys, next, seen));
+        });
+    }
+
+    private Future<Void> fetch(String prefix, String collection, JsonObject keys, List<String> ids) {
+        if (ids.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        final Promise<Void> promise = Promise.promise();
+        final JsonObject query = new JsonObject().put("_id", new JsonObject().put("$in", new JsonArray(ids)));
+        mongo.find(collection, query, null, keys, validResultsHandler(result -> {
+            if (result.isLeft()) {
+                promise.fail(result.left().getValue());
+                return;
+            }
+            final Set<String> missing = new HashSet<>(ids);
+            for (Object o : result.right().getValue()) {
+                if (!(o instanceof JsonObject)) continue;
+                final JsonObject doc = (JsonObject) o;
+                missing.remove(doc.getString("_id"));
+                if (POST.equals(prefix)) {
+                    indexPost(doc);
+                } else {
+                    indexBlog(doc);
+                }
+            }
+            for (String id : missing) {
+                remove(prefix + id);
+            }
+            promise.complete();
+        }));
+        return promise.future();
+    }
+
+    private void indexPost(JsonObject post) {
+        final String id = post.getString("_id");
+        if (!Field.PUBLISHED.equals(post.getString("state"))) {
+            remove(POST + id);
+            return;
+        }
+        final String blogId = post.getJsonObject("blog", new JsonObject()).getString("$id");
+        final long modified = SearchResults.millis(post.getValue("modified"));
+        final Set<String> terms = SearchWordTokenizer.terms(post.getString("title"));
+        terms.addAll(SearchWordTokenizer.terms(post.getString("contentPlain")));
+        index.upsert(new InvertedIndex.Document(POST + id, blogId, modified, false), terms);
+        putTitle(POST + id, blogId, false, post.getString("title", ""));
+    }
+
+    private void indexBlog(JsonObject blog) {
+        final String id = blog.getString("_id");
+        final long modified = SearchResults.millis(blog.getValue("modified"));
+        final boolean visibleToAll = Field.PUBLIC.equals(blog.getString("visibility"));
+        index.upsert(new InvertedIndex.Document(BLOG + id, id, modified, visibleToAll),
+                SearchWordTokenizer.terms(blog.getString("title")));
+        putTitle(BLOG + id, id, visibleToAll, blog.getString("title", ""));
+    }
+
+    private void putTitle(String key, String blogId, boolean visibleToAll, String title) {
+        final boolean post = key.startsWith(POST);
+        final JsonObject value = new JsonObject()
+                .put("type", post ? SearchUpdates.POST : SearchUpdates.BLOG)
+                .put("_id", key.substring((post ? POST : BLOG).length()))
+                .put("blogId", blogId)
+                .put("title", title);
+        titles.put(new PrefixIndex.Entry(key, blogId, visibleToAll, value), title);
+    }
+
+    private void remove(String key) {
+        index.remove(key);
+        titles.remove(key);
+    }
+
+    private void removeIf(Predicate<InvertedIndex.Document> predicate) {
+        for (InvertedIndex.Document doc : index.documents(predicate)) {
+            remove(doc.getKey());
+        }
+    }
+
+    private Future<Void> loadSnapshot() {
+        if (snapshotPath == null || !Files.exists(Paths.get(snapshotPath))) {
+            return Future.succeededFuture();
+        }
+        final Promise<Void> promise = Promise.promise();
+        vertx.<Void>executeBlocking(future -> {
+            try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(snapshotPath))))) {
+                final DataInputStream data = new DataInputStream(in);
+                index.read(data);
+                final int titleCount = data.readInt();
+                for (int t = 0; t < titleCount; t++) {
+                    final String key = data.readUTF();
+                    final String blogId = data.readUTF();
+                    final boolean visibleToAll = data.readBoolean();
+                    final String title = data.readUTF();
+                    // a title written after a removal from the index, reconcile brings back the others
+                    if (index.get(key) != null) {
+                        putTitle(key, blogId, visibleToAll, title);
+                    }
+                }
+                future.complete();
+            } catch (IOException | RuntimeException e) {
+                // a broken snapshot only means a full build from Mongo
+                log.warn(String.format("[Blog@%s::loadSnapshot] Ignoring search index snapshot %s: %s", this.getClass().getSimpleName(), snapshotPath, e.getMessage()));
+                index.removeIf(doc -> true);
+                titles.clear();
+                future.complete();
+            }
+        }, false, promise);
+        return promise.future();
+    }
+
+    private Future<Void> writeSnapshot() {
+        if (snapshotPath == null || !ready) {
+            return Future.succeededFuture();
+        }
+        final Promise<Void> promise = Promise.promise();
+        vertx.<Void>executeBlocking(future -> {
+            try {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final DataOutputStream data = new DataOutputStream(bytes);
+                index.write(data);
+                final List<PrefixIndex.Entry> entries = titles.entries();
+                data.writeInt(entries.size());
+                for (PrefixIndex.Entry entry : entries) {
+                    data.writeUTF(entry.getKey());
+                    data.writeUTF(entry.getBlogId());
+                    data.writeBoolean(entry.isVisibleToAll());
+                    data.writeUTF(entry.getValue().getString("title"));
+                }
+                final Path target = Paths.get(snapshotPath);
+                // one temporary file per deployment, several verticle instances may share the snapshot
+                final Path tmp = Paths.get(snapshotPath + "." + deploymentId + ".tmp");
+                try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    bytes.writeTo(out);
+                }
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                future.complete();
+            } catch (IOException e) {
+                log.error(String.format("[Blog@%s::writeSnapshot] Failed to write search index snapshot %s: %s", this.getClass().getSimpleName(), snapshotPath, e.getMessage()));
+                future.complete();
+            }
+        }, false, promise);
+        return promise.future();
+    }
+
+    private static <T> void complete(Promise<T> promise, T value, String error) {
+        if (error != null) {
+            promise.fail(error);
+        } else {
+            promise.complete(value);
+        }
+    }
+}
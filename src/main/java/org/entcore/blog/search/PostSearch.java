@@ -1,6 +1,5 @@
 package org.entcore.blog.search;
 
-import com.mongodb.DBObject;
 import com.mongodb.QueryBuilder;
 import fr.wseduc.mongodb.MongoDb;
 import fr.wseduc.mongodb.MongoQueryBuilder;
@@ -14,88 +13,114 @@ import org.entcore.blog.Blog;
 import org.entcore.blog.core.constants.Field;
 import org.entcore.common.service.impl.MongoDbSearchService;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 import static org.entcore.common.mongodb.MongoDbResult.validResultsHandler;
 
 public class PostSearch implements ISearch {
     private static final Logger log = LoggerFactory.getLogger(BlogSearch.class);
+    private static final String CONTENT_PLAIN = "contentPlain";
+    private static final String HIGHLIGHTS = "highlights";
     private final MongoDb mongo;
+    private final AccessibleBlogs accessibleBlogs;
 
     public PostSearch() {
+        this(new AccessibleBlogs());
+    }
+
+    public PostSearch(AccessibleBlogs accessibleBlogs) {
         this.mongo = MongoDb.getInstance();
+        this.accessibleBlogs = accessibleBlogs;
     }
 
     @Override
     public Future<JsonArray> get(String userId, List<String> groupIds, List<String> searchWords, Integer page, Integer limit) {
-        return this.getBlogId(userId, groupIds)
-                .compose(listIds -> this.searchPosts(page, limit, searchWords, listIds));
+        return this.accessibleBlogs.get(userId, groupIds)
+                .compose(listIds -> this.searchPosts(page, limit, searchWords, listIds, true));
     }
 
-    private Future<List<String>> getBlogId(String userId, List<String> groupIdsLst) {
-        Promise<List<String>> promise = Promise.promise();
-        final List<DBObject> groups = new ArrayList<>();
-        groups.add(QueryBuilder.start("userId").is(userId).get());
-        for (String gpId : groupIdsLst) {
-            groups.add(QueryBuilder.start("groupId").is(gpId).get());
-        }
-
-        final QueryBuilder rightsQuery = new QueryBuilder().or(
-                QueryBuilder.start("author.userId").is(userId).get(),
-                QueryBuilder.start("shared").elemMatch(
-                        new QueryBuilder().or(groups.toArray(new DBObject[groups.size()])).get()
-                ).get());
+    /**
+     * @param blogIds ids of the blogs accessible to the user, already resolved
+     * @return the hits without their content, which {@link #loadContent(JsonArray)} reads for the hits served only
+     */
+    public Future<JsonArray> get(List<String> blogIds, List<String> searchWords, Integer page, Integer limit) {
+        return this.searchPosts(page, limit, searchWords, blogIds, false);
+    }
 
-        final JsonObject projection = new JsonObject();
-        projection.put("_id", 1);
-        mongo.find(Blog.BLOGS_COLLECTION, MongoQueryBuilder.build(rightsQuery), null, projection, validResultsHandler(result -> {
-            if (result.isRight()) {
-                List<String> blogIdList = result.right().getValue().stream()
-                        .filter(JsonObject.class::isInstance)
-                        .map(JsonObject.class::cast)
-                        .map(blogInfo -> blogInfo.getString("_id"))
-                        .collect(Collectors.toList());
-                promise.complete(blogIdList);
-            } else {
+    /**
+     * Reads the plain-text content of {@code hits}, as returned by {@link #get(List, List, Integer, Integer)}, into them.
+     */
+    public Future<JsonArray> loadContent(JsonArray hits) {
+        final JsonArray ids = new JsonArray();
+        for (Object o : hits) {
+            if (o instanceof JsonObject) {
+                ids.add(((JsonObject) o).getString("_id"));
+            }
+        }
+        if (ids.isEmpty()) {
+            return Future.succeededFuture(hits);
+        }
+        final Promise<JsonArray> promise = Promise.promise();
+        final JsonObject query = new JsonObject().put("_id", new JsonObject().put("$in", ids));
+        mongo.find(Blog.POSTS_COLLECTION, query, null, new JsonObject().put(CONTENT_PLAIN, 1), validResultsHandler(result -> {
+            if (result.isLeft()) {
                 promise.fail(result.left().getValue());
+                return;
+            }
+            final Map<String, String> contents = new HashMap<>();
+            for (Object o : result.right().getValue()) {
+                if (o instanceof JsonObject) {
+                    contents.put(((JsonObject) o).getString("_id"), ((JsonObject) o).getString(CONTENT_PLAIN, ""));
+                }
             }
+            for (Object o : hits) {
+                if (o instanceof JsonObject) {
+                    final JsonObject hit = (JsonObject) o;
+                    hit.put(CONTENT_PLAIN, contents.getOrDefault(hit.getString("_id"), ""));
+                }
+            }
+            promise.complete(hits);
         }));
-
         return promise.future();
     }
 
-    private Future<JsonArray> searchPosts(int page, int limit, List<String> searchWords, final List<String> setIds) {
+    private Future<JsonArray> searchPosts(Integer page, Integer limit, List<String> searchWords, final List<String> setIds,
+                                          boolean withContent) {
+        if (setIds.isEmpty() || searchWords.isEmpty()) {
+            return Future.succeededFuture(new JsonArray());
+        }
         Promise<JsonArray> promise = Promise.promise();
-        final int skip = (0 == page) ? -1 : page * limit;
-
-        final QueryBuilder worldsQuery = QueryBuilder.start();
-
-        // toArray(DBObject[]::new) allows you to have a DBObject... from a stream
-        worldsQuery.and(searchWords.stream().map(s -> new QueryBuilder()
-                .or(
-                        QueryBuilder.start(Field.TITLE).regex(Pattern.compile("(^|$|\\W)" + s + "(^|$|\\W)", (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE))).get(),
-                        QueryBuilder.start(Field.CONTENT).regex(Pattern.compile("(^|$|\\W)" + s + "(^|$|\\W)", (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE))).get()
-                ).get()).toArray(DBObject[]::new));
+        final int pageSize = SearchResults.cap(limit);
+        final int skip = (0 == SearchResults.page(page)) ? -1 : SearchResults.page(page) * pageSize;
 
+        // served by the {title, contentPlain} text index, case and accent insensitive, every word is required as in the former regex search
+        final QueryBuilder textQuery = new QueryBuilder().text(MongoDbSearchService.textSearchedComposition(SearchWordTokenizer.normalize(searchWords)));
         final QueryBuilder blogQuery = QueryBuilder.start("blog.$id").in(setIds);
         final QueryBuilder publishedQuery = QueryBuilder.start("state").is(Field.PUBLISHED);
 
-        final QueryBuilder query = new QueryBuilder().and(worldsQuery.get(), blogQuery.get(), publishedQuery.get());
+        final QueryBuilder query = new QueryBuilder().and(textQuery.get(), blogQuery.get(), publishedQuery.get());
 
-        JsonObject sort = new JsonObject().put("modified", -1);
+        // best matches first, same order as the blog search so that SearchResults.mergeTopK merges sorted lists
+        final JsonObject textScore = new JsonObject().put("$meta", "textScore");
+        final JsonObject sort = new JsonObject().put(SearchResults.SCORE, textScore).put("_id", -1);
         final JsonObject projection = new JsonObject();
+        projection.put(SearchResults.SCORE, textScore);
         projection.put("title", 1);
-        projection.put("content", 1);
+        if (withContent) {
+            projection.put(CONTENT_PLAIN, 1);
+        }
         projection.put("blog.$id", 1);
         projection.put("modified", 1);
         projection.put("author.userId", 1);
         projection.put("author.username", 1);
 
         mongo.find(Blog.POSTS_COLLECTION, MongoQueryBuilder.build(query), sort,
-                projection, skip, limit, Integer.MAX_VALUE, validResultsHandler(result -> {
+                projection, skip, pageSize, pageSize, validResultsHandler(result -> {
                     if (result.isRight()) {
                         promise.complete(result.right().getValue());
                     } else {
@@ -108,6 +133,18 @@ public class PostSearch implements ISearch {
 
     @Override
     public JsonArray formatSearchResult(final JsonArray results, final JsonArray columnsHeader) {
+        return formatSearchResult(results, columnsHeader, Collections.emptyList());
+    }
+
+    /**
+     * Formats the hits with a bounded plain-text snippet of their content around the first of {@code searchWords},
+     * and the offsets of the matched words in it.
+     */
+    public JsonArray formatSearchResult(final JsonArray results, final JsonArray columnsHeader, final List<String> searchWords) {
+        final Set<String> terms = new LinkedHashSet<>();
+        for (String word : searchWords) {
+            terms.addAll(SearchWordTokenizer.terms(word));
+        }
         try {
             final List<String> aHeader = columnsHeader.getList();
             final JsonArray traity = new JsonArray();
@@ -118,7 +155,9 @@ public class PostSearch implements ISearch {
                 if (j != null) {
                     final String blogId = j.getJsonObject("blog").getString("$id");
                     jr.put(aHeader.get(0), j.getString("title"));
-                    jr.put(aHeader.get(1), j.getString("content", ""));
+                    final Snippet snippet = Snippet.of(j.getString(CONTENT_PLAIN, ""), terms, Snippet.DEFAULT_LENGTH);
+                    jr.put(aHeader.get(1), snippet.getText());
+                    jr.put(HIGHLIGHTS, snippet.getHighlights());
                     jr.put(aHeader.get(2), j.getJsonObject("modified"));
                     jr.put(aHeader.get(3), j.getJsonObject("author").getString("username"));
                     jr.put(aHeader.get(4), j.getJsonObject("author").getString("userId"));
@@ -0,0 +1,176 @@
+package org.entcore.blog.search;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of global search results, bounded by the size of the encoded results, keyed by the normalized search
+ * words, a fingerprint of the accessible blogs and the page. Every write of a blog or post published on
+ * {@link SearchUpdates#ADDRESS} bumps the version of the cache: entries computed at an older version are misses.
+ * Hit, miss and eviction counters are returned to requests on {@link #METRICS_ADDRESS}.
+ */
+public class SearchResultCache {
+    public static final String METRICS_ADDRESS = "blog.search.cache.metrics";
+    private static final char SEPARATOR = '\u0000';
+
+    private final Vertx vertx;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long bytes = 0;
+    private MessageConsumer<JsonObject> updatesConsumer;
+    private MessageConsumer<JsonObject> metricsConsumer;
+
+    public SearchResultCache(Vertx vertx, long maxBytes) {
+        this.vertx = vertx;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cache bounded by {@code search-cache-max-bytes}, or null if it is not positive
+     */
+    public static SearchResultCache create(Vertx vertx, JsonObject config) {
+        final long maxBytes = config.getLong("search-cache-max-bytes", 16L * 1024 * 1024);
+        return maxBytes > 0 ? new SearchResultCache(vertx, maxBytes) : null;
+    }
+
+    public void start() {
+        if (updatesConsumer == null) {
+            updatesConsumer = vertx.eventBus().consumer(SearchUpdates.ADDRESS, message -> version.incrementAndGet());
+            metricsConsumer = vertx.eventBus().consumer(METRICS_ADDRESS, message -> message.reply(metrics()));
+        }
+    }
+
+    public void stop() {
+        if (updatesConsumer != null) {
+            updatesConsumer.unregister();
+            metricsConsumer.unregister();
+            updatesConsumer = null;
+            metricsConsumer = null;
+        }
+    }
+
+    /**
+     * @return the current version, to be passed to {@link #put(String, long, JsonArray)} once the search is done
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * @param blogIds sorted ids of the accessible blogs, as returned by {@link AccessibleBlogs}
+     */
+    public String key(List<String> searchWords, List<String> blogIds, int page, int limit, JsonArray columnsHeader) {
+        final StringBuilder key = new StringBuilder();
+        for (String word : new TreeSet<>(SearchWordTokenizer.normalize(searchWords))) {
+            key.append(word).append(SEPARATOR);
+        }
+        key.append(page).append(SEPARATOR).append(limit).append(SEPARATOR)
+                .append(columnsHeader.encode()).append(SEPARATOR).append(fingerprint(blogIds));
+        return key.toString();
+    }
+
+    /**
+     * @return a copy of the cached results, or null if they are missing or outdated
+     */
+    public JsonArray get(String key) {
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.version != version.get()) {
+                remove(key);
+            }
+        }
+        if (entry == null || entry.version != version.get()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.results.copy();
+    }
+
+    /**
+     * @param version version read before the search started, results of a search overlapping a write are not cached
+     */
+    public void put(String key, long version, JsonArray results) {
+        if (version != this.version.get()) {
+            return;
+        }
+        final Entry entry = new Entry(version, results.copy(), key.length() * 2L + results.encode().length() * 2L);
+        if (entry.weight > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, entry);
+            bytes += entry.weight;
+            final Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public JsonObject metrics() {
+        synchronized (entries) {
+            return new JsonObject()
+                    .put("hits", hits.sum())
+                    .put("misses", misses.sum())
+                    .put("evictions", evictions.sum())
+                    .put("entries", entries.size())
+                    .put("bytes", bytes)
+                    .put("version", version.get());
+        }
+    }
+
+    private void remove(String key) {
+        final Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.weight;
+        }
+    }
+
+    private static String fingerprint(List<String> blogIds) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String blogId : blogIds) {
+                digest.update(blogId.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return Base64.getEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        private final long version;
+        private final JsonArray results;
+        private final long weight;
+
+        private Entry(long version, JsonArray results, long weight) {
+            this.version = version;
+            this.results = results;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.entcore.blog.search;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Paging helpers shared by the blog and post searches. Both sources return their hits by decreasing text score, then
+ * _id, which is the order of the merge: any other source order would skip or repeat hits across pages.
+ */
+public final class SearchResults {
+    /** largest page served to the search engine */
+    public static final int MAX_LIMIT = 100;
+    /** deepest result fetched from each source to serve a page of the merged results */
+    public static final int MAX_WINDOW = 1000;
+    /** error of the pages lying beyond {@link #MAX_WINDOW} */
+    public static final String PAGE_TOO_DEEP = "search.page.too.deep";
+    /** key of the Mongo text score, projected by both sources */
+    public static final String SCORE = "score";
+
+    private SearchResults() {
+    }
+
+    public static int page(Integer page) {
+        return page == null ? 0 : Math.max(0, page);
+    }
+
+    /**
+     * @return the page size served to the search engine
+     */
+    public static int limit(Integer limit) {
+        return limit == null || limit <= 0 ? MAX_LIMIT : Math.min(limit, MAX_LIMIT);
+    }
+
+    /**
+     * @return the number of results a source may return for one query
+     */
+    public static int cap(Integer limit) {
+        return limit == null || limit <= 0 ? MAX_LIMIT : Math.min(limit, MAX_WINDOW);
+    }
+
+    /**
+     * @return whether {@code page} can be served, that is lies within the first {@link #MAX_WINDOW} results
+     */
+    public static boolean servable(int page, int limit) {
+        return (long) (page + 1) * limit <= MAX_WINDOW;
+    }
+
+    /**
+     * @return the number of results each source must return for the merge to serve {@code page}
+     */
+    public static int window(int page, int limit) {
+        return (int) Math.min((long) (page + 1) * limit, MAX_WINDOW);
+    }
+
+    /**
+     * Merges two result lists, best text score first, and returns the {@code limit} results following the first
+     * {@code skip} ones. On equal scores, results of {@code first} come first, each source keeping its own order.
+     */
+    public static JsonArray mergeTopK(JsonArray first, JsonArray second, int skip, int limit) {
+        return merge(first, second, o -> score(o.getValue(SCORE)), skip, limit);
+    }
+
+    /**
+     * Merges two result lists, most recently modified first, and returns the {@code limit} results following
+     * the first {@code skip} ones. On equal dates, results of {@code first} come first.
+     *
+     * @param modifiedKey key of the modification date in the results
+     */
+    public static JsonArray mergeByDate(JsonArray first, JsonArray second, String modifiedKey, int skip, int limit) {
+        return merge(first, second, o -> (double) millis(o.getValue(modifiedKey)), skip, limit);
+    }
+
+    private static JsonArray merge(JsonArray first, JsonArray second, ToDoubleFunction<JsonObject> key, int skip, int limit) {
+        final List<JsonObject> a = sorted(first, key);
+        final List<JsonObject> b = sorted(second, key);
+        final JsonArray result = new JsonArray();
+        int i = 0, j = 0, rank = 0;
+        while ((i < a.size() || j < b.size()) && result.size() < limit) {
+            final JsonObject next;
+            if (j >= b.size() || (i < a.size() && key.applyAsDouble(a.get(i)) >= key.applyAsDouble(b.get(j)))) {
+                next = a.get(i++);
+            } else {
+                next = b.get(j++);
+            }
+            if (rank++ >= skip) {
+                result.add(next);
+            }
+        }
+        return result;
+    }
+
+    private static List<JsonObject> sorted(JsonArray results, ToDoubleFunction<JsonObject> key) {
+        final List<JsonObject> list = new ArrayList<>(results.size());
+        for (Object o : results) {
+            if (o instanceof JsonObject) {
+                list.add((JsonObject) o);
+            }
+        }
+        // stable: sources already sorted are kept as is, ties included
+        list.sort(Comparator.comparingDouble(key).reversed());
+        return list;
+    }
+
+    /**
+     * @return the text score of a result, 0 if missing
+     */
+    public static double score(Object score) {
+        return score instanceof Number ? ((Number) score).doubleValue() : 0d;
+    }
+
+    /**
+     * @param date a Mongo date, either {@code {$date: ...}} or its value, as epoch millis or ISO-8601 string
+     * @return the date in epoch millis, 0 if missing or malformed
+     */
+    public static long millis(Object date) {
+        if (date instanceof JsonObject) {
+            date = ((JsonObject) date).getValue("$date");
+        }
+        if (date instanceof Number) {
+            return ((Number) date).longValue();
+        }
+        if (date instanceof String) {
+            try {
+                return Instant.parse((String) date).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return 0L;
+            }
+        }
+        return 0L;
+    }
+}
@@ -0,0 +1,44 @@
+package org.entcore.blog.search;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Publishes the writes of blogs and posts on {@link #ADDRESS} to every instance of the cluster, for the search
+ * index and the search result cache to follow them.
+ */
+public class SearchUpdates {
+    public static final String ADDRESS = "blog.search.updates";
+    public static final String TYPE = "type";
+    public static final String ID = "id";
+    public static final String REMOVED = "removed";
+    public static final String POST = "post";
+    public static final String BLOG = "blog";
+    private final Vertx vertx;
+
+    public SearchUpdates(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    public void postChanged(String postId) {
+        publish(POST, postId, false);
+    }
+
+    public void postRemoved(String postId) {
+        publish(POST, postId, true);
+    }
+
+    public void blogChanged(String blogId) {
+        publish(BLOG, blogId, false);
+    }
+
+    public void blogRemoved(String blogId) {
+        publish(BLOG, blogId, true);
+    }
+
+    private void publish(String type, String id, boolean removed) {
+        if (id != null) {
+            vertx.eventBus().publish(ADDRESS, new JsonObject().put(TYPE, type).put(ID, id).put(REMOVED, removed));
+        }
+    }
+}
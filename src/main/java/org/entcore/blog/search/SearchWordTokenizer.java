@@ -0,0 +1,174 @@
+package org.entcore.blog.search;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Single-pass tokenizers of the searches, without regex, sharing one normalization: lower-casing and folding of
+ * accents ("Élève" becomes "eleve").
+ * <ul>
+ *     <li>{@link #words(String, int, boolean)} splits a search text into distinct search words: words are separated by
+ *     whitespace, ASCII punctuation other than the apostrophe is dropped and words shorter than the minimum size are
+ *     ignored.</li>
+ *     <li>{@link #terms(String)} splits an indexed text into its distinct normalized terms, on every character which
+ *     is neither a letter nor a digit: the same word boundaries as the former {@code (^|$|\W)word(^|$|\W)} regex
+ *     search.</li>
+ * </ul>
+ * Words are built in a buffer reused per thread, a string is only allocated for each distinct word returned.
+ */
+public final class SearchWordTokenizer {
+    private static final ThreadLocal<StringBuilder> BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(32));
+    // folding of the Latin-1 letters U+00C0 to U+00FF, already lower-cased, null for the characters kept as is
+    private static final String[] LATIN1_FOLDING = new String[64];
+
+    static {
+        final String from = "ÀÁÂÃÄÅÆÇÈÉÊËÌÍÎÏÑÒÓÔÕÖØÙÚÛÜÝàáâãäåæçèéêëìíîïñòóôõöøùúûüýÿ";
+        final String[] to = {"a", "a", "a", "a", "a", "a", "ae", "c", "e", "e", "e", "e", "i", "i", "i", "i", "n",
+                "o", "o", "o", "o", "o", "o", "u", "u", "u", "u", "y", "a", "a", "a", "a", "a", "a", "ae", "c", "e", "e",
+                "e", "e", "i", "i", "i", "i", "n", "o", "o", "o", "o", "o", "o", "u", "u", "u", "u", "y", "y"};
+        for (int i = 0; i < from.length(); i++) {
+            LATIN1_FOLDING[from.charAt(i) - 0xC0] = to[i];
+        }
+    }
+
+    private SearchWordTokenizer() {
+    }
+
+    /**
+     * @return {@code text} lower-cased and accent-folded, the form of the normalized search fields and terms
+     */
+    public static String normalize(String text) {
+        return text == null ? "" : normalize(text, 0, text.length());
+    }
+
+    /**
+     * @return {@code text[start, end[} lower-cased and accent-folded, without copy when it is already normalized
+     */
+    public static String normalize(String text, int start, int end) {
+        int i = start;
+        while (i < end && isNormalized(text.charAt(i))) {
+            i++;
+        }
+        if (i == end) {
+            return start == 0 && end == text.length() ? text : text.substring(start, end);
+        }
+        final StringBuilder normalized = BUFFERS.get();
+        normalized.setLength(0);
+        normalized.append(text, start, i);
+        for (; i < end; i++) {
+            appendNormalized(normalized, text.charAt(i));
+        }
+        return normalized.toString();
+    }
+
+    public static List<String> normalize(List<String> words) {
+        final List<String> normalized = new ArrayList<>(words.size());
+        for (String word : words) {
+            normalized.add(normalize(word));
+        }
+        return normalized;
+    }
+
+    /**
+     * @param normalize whether the words are normalized as by {@link #normalize(String)}, otherwise they are kept as typed
+     * @return the distinct words of {@code searchText}, in order
+     */
+    public static List<String> words(String searchText, int minSize, boolean normalize) {
+        final List<String> words = new ArrayList<>();
+        if (searchText == null) {
+            return words;
+        }
+        final StringBuilder word = BUFFERS.get();
+        word.setLength(0);
+        final int length = searchText.length();
+        for (int i = 0; i <= length; i++) {
+            final char c = i < length ? searchText.charAt(i) : ' ';
+            if (isWhitespace(c)) {
+                if (word.length() >= minSize && word.length() > 0 && !contains(words, word)) {
+                    words.add(word.toString());
+                }
+                word.setLength(0);
+            } else if (isDroppedPunctuation(c)) {
+                continue;
+            } else if (normalize) {
+                appendNormalized(word, c);
+            } else {
+                word.append(c);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @return the distinct normalized terms of {@code text}
+     */
+    public static Set<String> terms(String text) {
+        final Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        final StringBuilder term = BUFFERS.get();
+        term.setLength(0);
+        final int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            final char c = i < length ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                appendNormalized(term, c);
+            } else if (term.length() > 0) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Linear scan: a search has a handful of words, and a duplicate then allocates nothing.
+     */
+    private static boolean contains(List<String> words, CharSequence word) {
+        for (String w : words) {
+            if (w.contentEquals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNormalized(char c) {
+        return folding(c) == null && Character.toLowerCase(c) == c;
+    }
+
+    private static void appendNormalized(StringBuilder out, char c) {
+        final String folded = folding(c);
+        if (folded == null) {
+            out.append(Character.toLowerCase(c));
+        } else {
+            out.append(folded);
+        }
+    }
+
+    private static String folding(char c) {
+        if (c >= 0xC0 && c <= 0xFF) {
+            return LATIN1_FOLDING[c - 0xC0];
+        } else if (c == 'œ' || c == 'Œ') {
+            return "oe";
+        }
+        return null;
+    }
+
+    /**
+     * Same characters as the {@code \s} regex class.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Same characters as the {@code (?!')\p{Punct}} regex.
+     */
+    private static boolean isDroppedPunctuation(char c) {
+        return c != '\'' && ((c >= '!' && c <= '/') || (c >= ':' && c <= '@') || (c >= '[' && c <= '`') || (c >= '{' && c <= '~'));
+    }
+}
@@ -0,0 +1,89 @@
+package org.entcore.blog.search;
+
+import io.vertx.core.json.JsonArray;
+
+import java.util.Collection;
+
+/**
+ * Bounded plain-text excerpt of a search hit, around its first matched term, with the offsets of the matched
+ * words in the excerpt. A word matches a term when it starts with it, like the stemmed Mongo text search.
+ */
+public final class Snippet {
+    public static final int DEFAULT_LENGTH = 200;
+    private static final String ELLIPSIS = "…";
+
+    private final String text;
+    private final JsonArray highlights;
+
+    private Snippet(String text, JsonArray highlights) {
+        this.text = text;
+        this.highlights = highlights;
+    }
+
+    /**
+     * @param terms normalized search terms, see {@link SearchWordTokenizer#terms(String)}
+     */
+    public static Snippet of(String content, Collection<String> terms, int maxLength) {
+        if (content == null || content.isEmpty()) {
+            return new Snippet("", new JsonArray());
+        }
+        final int[] first = nextMatch(content, 0, content.length(), terms);
+        int start = first == null ? 0 : Math.max(0, first[0] - maxLength / 4);
+        int end = Math.min(content.length(), start + maxLength);
+        start = Math.max(0, end - maxLength);
+        // do not cut words at the snippet boundaries
+        while (start > 0 && start < content.length() && Character.isLetterOrDigit(content.charAt(start - 1))
+                && Character.isLetterOrDigit(content.charAt(start)) && (first == null || start < first[0])) {
+            start++;
+        }
+        while (end < content.length() && end > start && Character.isLetterOrDigit(content.charAt(end))
+                && Character.isLetterOrDigit(content.charAt(end - 1))) {
+            end--;
+        }
+        final String prefix = start > 0 ? ELLIPSIS : "";
+        final StringBuilder text = new StringBuilder(prefix).append(content, start, end).append(end < content.length() ? ELLIPSIS : "");
+        final JsonArray highlights = new JsonArray();
+        int[] match = nextMatch(content, start, end, terms);
+        while (match != null) {
+            highlights.add(new JsonArray().add(match[0] - start + prefix.length()).add(match[1] - start + prefix.length()));
+            match = nextMatch(content, match[1], end, terms);
+        }
+        return new Snippet(text.toString(), highlights);
+    }
+
+    /**
+     * @return the bounds of the first word of {@code content[from, to[} matching a term, or null
+     */
+    private static int[] nextMatch(String content, int from, int to, Collection<String> terms) {
+        if (terms.isEmpty()) {
+            return null;
+        }
+        int wordStart = -1;
+        for (int i = from; i <= to; i++) {
+            final boolean wordChar = i < to && Character.isLetterOrDigit(content.charAt(i));
+            if (wordChar && wordStart < 0) {
+                wordStart = i;
+            } else if (!wordChar && wordStart >= 0) {
+                final String word = SearchWordTokenizer.normalize(content, wordStart, i);
+                for (String term : terms) {
+                    if (word.startsWith(term)) {
+                        return new int[]{wordStart, i};
+                    }
+                }
+                wordStart = -1;
+            }
+        }
+        return null;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return {@code [start, end[} offsets of the matched words in {@link #getText()}
+     */
+    public JsonArray getHighlights() {
+        return highlights;
+    }
+}
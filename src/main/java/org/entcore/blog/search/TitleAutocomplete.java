@@ -0,0 +1,95 @@
+package org.entcore.blog.search;
+
+import fr.wseduc.mongodb.MongoDb;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.entcore.blog.Blog;
+import org.entcore.blog.core.constants.Field;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.entcore.common.mongodb.MongoDbResult.validResultsHandler;
+
+/**
+ * Type-ahead on the beginning of the titles of the blogs and published posts a user can read, blogs first, each
+ * in the order of their normalized titles. Served by the prefix index of the {@link BlogSearchIndex} when it is ready,
+ * otherwise by an anchored regex on {@code titleNormalized}, on the indexes of addTitlePrefixIndexes.js: both return
+ * the same entries.
+ */
+public class TitleAutocomplete {
+    public static final int MAX_LIMIT = 50;
+    private final MongoDb mongo;
+    private final AccessibleBlogs accessibleBlogs;
+    private final BlogSearchIndex searchIndex;
+
+    public TitleAutocomplete(MongoDb mongo, AccessibleBlogs accessibleBlogs, BlogSearchIndex searchIndex) {
+        this.mongo = mongo;
+        this.accessibleBlogs = accessibleBlogs;
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * @return up to {@code limit} entries {type, _id, blogId, title}, type being "blog" or "post"
+     */
+    public Future<JsonArray> complete(String userId, List<String> groupIds, String prefix, int limit) {
+        final String normalized = SearchWordTokenizer.normalize(prefix == null ? "" : prefix.trim());
+        final int max = Math.max(1, Math.min(limit, MAX_LIMIT));
+        if (normalized.isEmpty()) {
+            return Future.succeededFuture(new JsonArray());
+        }
+        return accessibleBlogs.get(userId, groupIds).compose(blogIds -> {
+            if (searchIndex != null && searchIndex.isReady()) {
+                return Future.succeededFuture(searchIndex.complete(blogIds, normalized, max));
+            }
+            final JsonObject title = new JsonObject().put("$regex", "^" + Pattern.quote(normalized));
+            final JsonObject blogQuery = new JsonObject().put(Field.TITLE_NORMALIZED, title)
+                    .put("$or", new JsonArray()
+                            .add(new JsonObject().put("visibility", Field.PUBLIC))
+                            .add(new JsonObject().put("_id", new JsonObject().put("$in", new JsonArray(blogIds)))));
+            final JsonObject postQuery = new JsonObject().put(Field.TITLE_NORMALIZED, title)
+                    .put("blog.$id", new JsonObject().put("$in", new JsonArray(blogIds)))
+                    .put("state", Field.PUBLISHED);
+            return find(Blog.BLOGS_COLLECTION, blogQuery, max).compose(blogs -> {
+                final JsonArray results = new JsonArray();
+                for (Object o : blogs) {
+                    final JsonObject blog = (JsonObject) o;
+                    results.add(entry(SearchUpdates.BLOG, blog.getString("_id"), blog.getString("_id"), blog.getString("title")));
+                }
+                if (results.size() >= max) {
+                    return Future.succeededFuture(results);
+                }
+                return find(Blog.POSTS_COLLECTION, postQuery, max - results.size()).map(posts -> {
+                    for (Object o : posts) {
+                        final JsonObject post = (JsonObject) o;
+                        results.add(entry(SearchUpdates.POST, post.getString("_id"),
+                                post.getJsonObject("blog", new JsonObject()).getString("$id"), post.getString("title")));
+                    }
+                    return results;
+                });
+            });
+        });
+    }
+
+    private Future<JsonArray> find(String collection, JsonObject query, int limit) {
+        final Promise<JsonArray> promise = Promise.promise();
+        final JsonObject keys = new JsonObject().put("title", 1).put("blog", 1);
+        // _id breaks ties as the keys of the prefix index do
+        final JsonObject sort = new JsonObject().put(Field.TITLE_NORMALIZED, 1).put("_id", 1);
+        mongo.find(collection, query, sort, keys, -1, limit, limit,
+                validResultsHandler(result -> {
+                    if (result.isRight()) {
+                        promise.complete(result.right().getValue());
+                    } else {
+                        promise.fail(result.left().getValue());
+                    }
+                }));
+        return promise.future();
+    }
+
+    private static JsonObject entry(String type, String id, String blogId, String title) {
+        return new JsonObject().put("type", type).put("_id", id).put("blogId", blogId).put("title", title);
+    }
+}
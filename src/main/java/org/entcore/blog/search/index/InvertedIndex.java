@@ -0,0 +1,230 @@
+package org.entcore.blog.search.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * In-memory inverted index: each term maps to the {@link PostingList} of the documents containing it.
+ * Updating a document tombstones its former doc id and appends it under a new one, tombstones are purged by
+ * {@link #compact()} once they make up half of the doc ids.
+ */
+public class InvertedIndex {
+    private static final int FORMAT_VERSION = 3;
+    private static final int MIN_COMPACTION = 1024;
+
+    private final List<Document> docs = new ArrayList<>();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private int deleted;
+
+    public synchronized void upsert(Document doc, Collection<String> terms) {
+        removeKey(doc.getKey());
+        final int docId = docs.size();
+        docs.add(doc);
+        docIds.put(doc.getKey(), docId);
+        for (String term : terms) {
+            postings.computeIfAbsent(term, k -> new PostingList()).add(docId);
+        }
+    }
+
+    public synchronized void remove(String key) {
+        removeKey(key);
+    }
+
+    public synchronized void removeIf(Predicate<Document> predicate) {
+        for (Document doc : documents(predicate)) {
+            removeKey(doc.getKey());
+        }
+    }
+
+    public synchronized Document get(String key) {
+        final Integer docId = docIds.get(key);
+        return docId == null ? null : docs.get(docId);
+    }
+
+    public synchronized List<Document> documents(Predicate<Document> predicate) {
+        final List<Document> result = new ArrayList<>();
+        for (Document doc : docs) {
+            if (doc != null && predicate.test(doc)) {
+                result.add(doc);
+            }
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return docIds.size();
+    }
+
+    /**
+     * @return the live documents containing every term and accepted by {@code filter}, most recent first
+     */
+    public synchronized List<Document> search(Collection<String> terms, Predicate<Document> filter) {
+        final List<Document> result = new ArrayList<>();
+        if (terms.isEmpty()) {
+            return result;
+        }
+        final PostingList[] lists = new PostingList[terms.size()];
+        int i = 0;
+        for (String term : terms) {
+            final PostingList list = postings.get(term);
+            if (list == null) {
+                return result;
+            }
+            lists[i++] = list;
+        }
+        Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+        // start from the rarest term, then intersect with the next ones
+        int[] candidates = lists[0].toArray();
+        int count = candidates.length;
+        for (int l = 1; l < lists.length && count > 0; l++) {
+            final PostingList.Cursor cursor = lists[l].cursor();
+            int docId = cursor.next();
+            int kept = 0;
+            for (int c = 0; c < count && docId >= 0; c++) {
+                while (docId >= 0 && docId < candidates[c]) {
+                    docId = cursor.next();
+                }
+                if (docId == candidates[c]) {
+                    candidates[kept++] = docId;
+                }
+            }
+            count = kept;
+        }
+        for (int c = 0; c < count; c++) {
+            final Document doc = docs.get(candidates[c]);
+            if (doc != null && filter.test(doc)) {
+                result.add(doc);
+            }
+        }
+        result.sort(Comparator.comparingLong(Document::getModified).reversed());
+        return result;
+    }
+
+    /**
+     * Renumbers live documents and drops tombstones from every posting list.
+     */
+    public synchronized void compact() {
+        if (deleted == 0) {
+            return;
+        }
+        final int[] newIds = new int[docs.size()];
+        final List<Document> live = new ArrayList<>(docIds.size());
+        for (int docId = 0; docId < docs.size(); docId++) {
+            final Document doc = docs.get(docId);
+            newIds[docId] = doc == null ? -1 : live.size();
+            if (doc != null) {
+                live.add(doc);
+            }
+        }
+        postings.replaceAll((term, list) -> list.remap(newIds));
+        postings.values().removeIf(list -> list == null);
+        docs.clear();
+        docs.addAll(live);
+        docIds.clear();
+        for (int docId = 0; docId < docs.size(); docId++) {
+            docIds.put(docs.get(docId).getKey(), docId);
+        }
+        deleted = 0;
+    }
+
+    public synchronized void write(DataOutput out) throws IOException {
+        compact();
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(docs.size());
+        for (Document doc : docs) {
+            doc.write(out);
+        }
+        out.writeInt(postings.size());
+        for (Map.Entry<String, PostingList> e : postings.entrySet()) {
+            out.writeUTF(e.getKey());
+            e.getValue().write(out);
+        }
+    }
+
+    public synchronized void read(DataInput in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported search index snapshot format");
+        }
+        docs.clear();
+        docIds.clear();
+        postings.clear();
+        deleted = 0;
+        final int docCount = in.readInt();
+        for (int docId = 0; docId < docCount; docId++) {
+            final Document doc = Document.read(in);
+            docs.add(doc);
+            docIds.put(doc.getKey(), docId);
+        }
+        final int termCount = in.readInt();
+        for (int t = 0; t < termCount; t++) {
+            postings.put(in.readUTF(), PostingList.read(in));
+        }
+    }
+
+    private void removeKey(String key) {
+        final Integer docId = docIds.remove(key);
+        if (docId == null) {
+            return;
+        }
+        docs.set(docId, null);
+        deleted++;
+        if (deleted >= MIN_COMPACTION && deleted * 2 >= docs.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Indexed document: only the fields needed to filter and sort, the displayed ones are read from Mongo for the
+     * page served.
+     */
+    public static class Document {
+        private final String key;
+        private final String blogId;
+        private final long modified;
+        private final boolean visibleToAll;
+
+        public Document(String key, String blogId, long modified, boolean visibleToAll) {
+            this.key = key;
+            this.blogId = blogId == null ? "" : blogId;
+            this.modified = modified;
+            this.visibleToAll = visibleToAll;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getBlogId() {
+            return blogId;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        public boolean isVisibleToAll() {
+            return visibleToAll;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeUTF(key);
+            out.writeUTF(blogId);
+            out.writeLong(modified);
+            out.writeBoolean(visibleToAll);
+        }
+
+        static Document read(DataInput in) throws IOException {
+            return new Document(in.readUTF(), in.readUTF(), in.readLong(), in.readBoolean());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.entcore.blog.search.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Increasing int doc ids stored as varint-encoded deltas: most postings take one byte per document.
+ */
+public final class PostingList {
+    private byte[] bytes;
+    private int length;
+    private int size;
+    private int last = -1;
+
+    public PostingList() {
+        this.bytes = new byte[4];
+    }
+
+    private PostingList(byte[] bytes, int size, int last) {
+        this.bytes = bytes;
+        this.length = bytes.length;
+        this.size = size;
+        this.last = last;
+    }
+
+    /**
+     * @param docId must be greater than every id already added
+     */
+    public void add(int docId) {
+        if (docId <= last) {
+            throw new IllegalArgumentException("posting.not.increasing");
+        }
+        int delta = docId - last - 1;
+        if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+        }
+        while ((delta & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        bytes[length++] = (byte) delta;
+        last = docId;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public int[] toArray() {
+        final int[] ids = new int[size];
+        final Cursor cursor = cursor();
+        for (int i = 0; i < size; i++) {
+            ids[i] = cursor.next();
+        }
+        return ids;
+    }
+
+    /**
+     * @param newIds new doc id of each current doc id, negative for documents to drop
+     * @return the list renumbered, or null if every document was dropped
+     */
+    public PostingList remap(int[] newIds) {
+        final PostingList remapped = new PostingList();
+        final Cursor cursor = cursor();
+        for (int docId = cursor.next(); docId >= 0; docId = cursor.next()) {
+            if (newIds[docId] >= 0) {
+                remapped.add(newIds[docId]);
+            }
+        }
+        return remapped.size == 0 ? null : remapped;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(last);
+        out.writeInt(length);
+        out.write(bytes, 0, length);
+    }
+
+    public static PostingList read(DataInput in) throws IOException {
+        final int size = in.readInt();
+        final int last = in.readInt();
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new PostingList(bytes, size, last);
+    }
+
+    public final class Cursor {
+        private int offset;
+        private int current = -1;
+
+        /**
+         * @return the next doc id, or -1 at the end of the list
+         */
+        public int next() {
+            if (offset >= length) {
+                return -1;
+            }
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            current += delta + 1;
+            return current;
+        }
+    }
+}
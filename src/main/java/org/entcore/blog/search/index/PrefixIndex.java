@@ -0,0 +1,114 @@
+package org.entcore.blog.search.index;
+
+import io.vertx.core.json.JsonObject;
+import org.entcore.blog.search.SearchWordTokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Ordered index of normalized titles for type-ahead: a title is reachable from its start, so that "sortie" completes
+ * "Sortie au Musée", as the anchored regex on {@code titleNormalized} which serves the completion from Mongo.
+ * Lookups are lock-free range scans of a skip list, writes are serialized.
+ */
+public class PrefixIndex {
+    private static final char SEPARATOR = '\u0000';
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final Map<String, String> sortKeys = new ConcurrentHashMap<>();
+
+    public synchronized void put(Entry entry, String title) {
+        remove(entry.getKey());
+        // same value as the titleNormalized field
+        final String normalized = SearchWordTokenizer.normalize(title);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        final String sortKey = normalized + SEPARATOR + entry.getKey();
+        entries.put(sortKey, entry);
+        sortKeys.put(entry.getKey(), sortKey);
+    }
+
+    public synchronized void remove(String key) {
+        final String sortKey = sortKeys.remove(key);
+        if (sortKey != null) {
+            entries.remove(sortKey);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        sortKeys.clear();
+    }
+
+    public int size() {
+        return sortKeys.size();
+    }
+
+    public synchronized boolean contains(String key) {
+        return sortKeys.containsKey(key);
+    }
+
+    /**
+     * @return every entry
+     */
+    public synchronized List<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * @param maxScanned bound on the entries examined, so that a short prefix of a large index filtered down to
+     *                   a few blogs keeps a bounded latency
+     * @return the entries matching {@code filter} with a title starting with {@code prefix}, in the alphabetical order
+     * of the normalized titles then of the keys
+     */
+    public List<Entry> complete(String prefix, Predicate<Entry> filter, int limit, int maxScanned) {
+        final List<Entry> results = new ArrayList<>();
+        final String normalized = SearchWordTokenizer.normalize(prefix == null ? "" : prefix.trim());
+        if (normalized.isEmpty() || limit <= 0) {
+            return results;
+        }
+        int scanned = 0;
+        for (Entry entry : entries.subMap(normalized, true, normalized + Character.MAX_VALUE, false).values()) {
+            if (++scanned > maxScanned) break;
+            if (filter.test(entry)) {
+                results.add(entry);
+                if (results.size() >= limit) break;
+            }
+        }
+        return results;
+    }
+
+    public static class Entry {
+        private final String key;
+        private final String blogId;
+        private final boolean visibleToAll;
+        private final JsonObject value;
+
+        public Entry(String key, String blogId, boolean visibleToAll, JsonObject value) {
+            this.key = key;
+            this.blogId = blogId;
+            this.visibleToAll = visibleToAll;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getBlogId() {
+            return blogId;
+        }
+
+        public boolean isVisibleToAll() {
+            return visibleToAll;
+        }
+
+        public JsonObject getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright © "Open Digital Education" (SAS “WebServices pour l’Education”), 2014
+ *
+ * This program is published by "Open Digital Education" (SAS “WebServices pour l’Education”).
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https: //opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.blog.security;
+
+import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.webutils.Either;
+import fr.wseduc.webutils.Utils;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.blog.services.BlogService;
+import org.entcore.common.user.UserInfos;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded LRU cache of compiled blog ACLs (author and principal id to granted actions) and publication policy,
+ * expired after {@code ttl} ms. Entries are dropped on every instance of the cluster through {@link #ADDRESS} when
+ * a blog's shares or settings change; a load that overlaps an invalidation is not cached so that it cannot restore
+ * a stale ACL.
+ */
+public class BlogAclCache {
+	public static final String ADDRESS = "blog.acl.invalidate";
+	private static final Logger log = LoggerFactory.getLogger(BlogAclCache.class);
+	private static final JsonObject ACL_KEYS = new JsonObject().put("author", 1).put("shared", 1).put("publish-type", 1);
+
+	private final Vertx vertx;
+	private final MongoDb mongo;
+	private final long ttl;
+	private final Map<String, Acl> acls;
+	private long version = 0;
+	private MessageConsumer<String> consumer;
+
+	public BlogAclCache(Vertx vertx, MongoDb mongo, final int maxSize, long ttl) {
+		this.vertx = vertx;
+		this.mongo = mongo;
+		this.ttl = ttl;
+		this.acls = new LinkedHashMap<String, Acl>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Acl> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public static BlogAclCache create(Vertx vertx, MongoDb mongo, JsonObject config) {
+		return new BlogAclCache(vertx, mongo, config.getInteger("acl-cache-max-size", 10000),
+				config.getLong("acl-cache-ttl", 60000L));
+	}
+
+	public void start() {
+		if (consumer == null) {
+			consumer = vertx.eventBus().consumer(ADDRESS, message -> evict(message.body()));
+		}
+	}
+
+	public void stop() {
+		if (consumer != null) {
+			consumer.unregister();
+			consumer = null;
+		}
+	}
+
+	/**
+	 * Drops the ACL of {@code blogId} on this instance and on every other instance of the cluster.
+	 */
+	public void invalidate(String blogId) {
+		if (blogId == null) {
+			return;
+		}
+		evict(blogId);
+		vertx.eventBus().publish(ADDRESS, blogId);
+	}
+
+	public void rightsOf(final String blogId, final UserInfos user, final Handler<Either<String, BlogRights>> handler) {
+		acl(blogId, event -> {
+			if (event.isLeft()) {
+				handler.handle(new Either.Left<>(event.left().getValue()));
+			} else {
+				final Acl acl = event.right().getValue();
+				handler.handle(new Either.Right<>(acl == null ? null : acl.rightsOf(blogId, user)));
+			}
+		});
+	}
+
+	/**
+	 * @return the publication policy of {@code blogId}, RESTRAINT if it is not set, or null if the blog does not exist
+	 */
+	public void publishType(final String blogId, final Handler<Either<String, BlogService.PublishType>> handler) {
+		acl(blogId, event -> {
+			if (event.isLeft()) {
+				handler.handle(new Either.Left<>(event.left().getValue()));
+			} else {
+				final Acl acl = event.right().getValue();
+				handler.handle(new Either.Right<>(acl == null ? null : acl.publishType));
+			}
+		});
+	}
+
+	private void acl(final String blogId, final Handler<Either<String, Acl>> handler) {
+		final Acl cached;
+		final long loadVersion;
+		synchronized (acls) {
+			cached = acls.get(blogId);
+			loadVersion = version;
+		}
+		if (cached != null && System.currentTimeMillis() - cached.loadedAt < ttl) {
+			handler.handle(new Either.Right<>(cached));
+			return;
+		}
+		mongo.findOne("blogs", new JsonObject().put("_id", blogId), ACL_KEYS, event -> {
+			if (!"ok".equals(event.body().getString("status"))) {
+				handler.handle(new Either.Left<>(event.body().getString("message", "")));
+				return;
+			}
+			final JsonObject blog = event.body().getJsonObject("result");
+			if (blog == null) {
+				handler.handle(new Either.Right<>(null));
+				return;
+			}
+			final Acl acl = Acl.compile(blog);
+			synchronized (acls) {
+				if (version == loadVersion) {
+					acls.put(blogId, acl);
+				}
+			}
+			handler.handle(new Either.Right<>(acl));
+		});
+	}
+
+	private void evict(String blogId) {
+		synchronized (acls) {
+			version++;
+			acls.remove(blogId);
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Blog ACL evicted: " + blogId);
+		}
+	}
+
+	static class Acl {
+		private final String authorId;
+		private final Map<String, Set<String>> actionsByPrincipal;
+		private final BlogService.PublishType publishType;
+		private final long loadedAt = System.currentTimeMillis();
+
+		private Acl(String authorId, Map<String, Set<String>> actionsByPrincipal, BlogService.PublishType publishType) {
+			this.authorId = authorId;
+			this.actionsByPrincipal = actionsByPrincipal;
+			this.publishType = publishType;
+		}
+
+		static Acl compile(JsonObject blog) {
+			final Map<String, Set<String>> actionsByPrincipal = new HashMap<>();
+			for (Object o : blog.getJsonArray("shared", new JsonArray())) {
+				if (!(o instanceof JsonObject)) continue;
+				final JsonObject share = (JsonObject) o;
+				final String principal = share.getString("userId", share.getString("groupId"));
+				if (principal == null) continue;
+				final Set<String> actions = actionsByPrincipal.computeIfAbsent(principal, k -> new HashSet<>());
+				for (String action : share.fieldNames()) {
+					if (Boolean.TRUE.equals(share.getValue(action))) {
+						actions.add(action);
+					}
+				}
+			}
+			return new Acl(blog.getJsonObject("author", new JsonObject()).getString("userId"), actionsByPrincipal,
+					Utils.stringToEnum(blog.getString("publish-type"), BlogService.PublishType.RESTRAINT, BlogService.PublishType.class));
+		}
+
+		BlogRights rightsOf(String blogId, UserInfos user) {
+			final Set<String> actions = new HashSet<>(
+					actionsByPrincipal.getOrDefault(user.getUserId(), Collections.emptySet()));
+			for (String groupId : user.getGroupsIds()) {
+				actions.addAll(actionsByPrincipal.getOrDefault(groupId, Collections.emptySet()));
+			}
+			return new BlogRights(blogId, user.getUserId().equals(authorId), actions);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © "Open Digital Education" (SAS “WebServices pour l’Education”), 2014
+ *
+ * This program is published by "Open Digital Education" (SAS “WebServices pour l’Education”).
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https: //opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.blog.security;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.entcore.blog.controllers.PostController;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Denormalized view of a blog's author and shared entries: {@code principals.all} lists every user and group id
+ * having access to the blog, {@code principals.<action>} the ids granted that action. The author is listed
+ * everywhere, so that rights queries are a single multikey indexed {@code $in}.
+ */
+public class BlogPrincipals {
+	public static final String FIELD = "principals";
+	public static final String ALL = "all";
+	/** Rights always listed, even if not shared yet, so that the author matches them */
+	public static final List<String> INDEXED_RIGHTS = Arrays.asList(BlogRights.MANAGER_ACTION, PostController.LIST_ACTION);
+
+	private BlogPrincipals() {
+	}
+
+	public static String path(String right) {
+		return FIELD + "." + right;
+	}
+
+	/**
+	 * @return the ids to match against a principals list: the user id followed by the group ids
+	 */
+	public static List<String> ids(String userId, Collection<String> groupIds) {
+		final List<String> ids = new ArrayList<>(groupIds == null ? 1 : groupIds.size() + 1);
+		ids.add(userId);
+		if (groupIds != null) {
+			ids.addAll(groupIds);
+		}
+		return ids;
+	}
+
+	/**
+	 * @param blog blog document with at least {@code author} and {@code shared}
+	 */
+	public static JsonObject of(JsonObject blog) {
+		final String authorId = blog.getJsonObject("author", new JsonObject()).getString("userId");
+		final Map<String, Set<String>> principals = new LinkedHashMap<>();
+		principals.put(ALL, new LinkedHashSet<>());
+		for (String right : INDEXED_RIGHTS) {
+			principals.put(right, new LinkedHashSet<>());
+		}
+		for (Object o : blog.getJsonArray("shared", new JsonArray())) {
+			if (!(o instanceof JsonObject)) continue;
+			final JsonObject share = (JsonObject) o;
+			final String principal = share.getString("userId", share.getString("groupId"));
+			if (principal == null) continue;
+			principals.get(ALL).add(principal);
+			for (String action : share.fieldNames()) {
+				if (Boolean.TRUE.equals(share.getValue(action))) {
+					principals.computeIfAbsent(action, k -> new LinkedHashSet<>()).add(principal);
+				}
+			}
+		}
+		final JsonObject json = new JsonObject();
+		for (Map.Entry<String, Set<String>> e : principals.entrySet()) {
+			if (authorId != null) {
+				e.getValue().add(authorId);
+			}
+			json.put(e.getKey(), new JsonArray(new ArrayList<>(e.getValue())));
+		}
+		return json;
+	}
+}
@@ -22,7 +22,6 @@
 
 package org.entcore.blog.security;
 
-import com.mongodb.DBObject;
 import com.mongodb.QueryBuilder;
 import org.entcore.blog.controllers.BlogController;
 import org.entcore.blog.controllers.PostController;
@@ -38,15 +37,17 @@ import org.entcore.common.utils.StringUtils;
 import io.vertx.core.Handler;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.http.HttpServerRequest;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class BlogResourcesProvider implements ResourcesProvider {
 
+	private static final JsonObject POST_RIGHTS_KEYS = new JsonObject().put("author", 1).put("blog", 1);
 	private MongoDb mongo = MongoDb.getInstance();
+	private final BlogAclCache aclCache;
+
+	public BlogResourcesProvider(BlogAclCache aclCache) {
+		this.aclCache = aclCache;
+	}
 
 	@Override
 	public void authorize(HttpServerRequest request, Binding binding, UserInfos user, Handler<Boolean> handler) {
@@ -58,6 +59,7 @@ public class BlogResourcesProvider implements ResourcesProvider {
 			case "delete":
 			case "get":
 			case "shareResource":
+			case "visibilityProgress":
 			case "publishToLibrary":
 			case "shareJson":
 			case "shareJsonSubmit":
@@ -101,27 +103,24 @@ public class BlogResourcesProvider implements ResourcesProvider {
 			Handler<Boolean> handler) {
 		String id = request.params().get("blogId");
 		if (id != null && !id.trim().isEmpty()) {
-			QueryBuilder query = getDefaultQueryBuilder(user, serviceMethod, id);
-			executeCountQuery(request, "blogs", MongoQueryBuilder.build(query), 1, handler);
+			final String action = serviceMethod.replaceAll("\\.", "-");
+			request.pause();
+			// rights are reused by the services through BlogRights.of(request)
+			aclCache.rightsOf(id, user, event -> {
+				request.resume();
+				final BlogRights rights = event.isRight() ? event.right().getValue() : null;
+				if (rights != null && (rights.has(action) || rights.has("manager"))) {
+					rights.attach(request);
+					handler.handle(true);
+				} else {
+					handler.handle(false);
+				}
+			});
 		} else {
 			handler.handle(false);
 		}
 	}
 
-	private QueryBuilder getDefaultQueryBuilder(UserInfos user, String serviceMethod, String id) {
-		List<DBObject> groups = new ArrayList<>();
-		groups.add(QueryBuilder.start("userId").is(user.getUserId()).put(serviceMethod.replaceAll("\\.", "-")).is(true)
-				.get());
-		groups.add(QueryBuilder.start("userId").is(user.getUserId()).put("manager").is(true).get());
-		for (String gpId : user.getGroupsIds()) {
-			groups.add(QueryBuilder.start("groupId").is(gpId).put(serviceMethod.replaceAll("\\.", "-")).is(true).get());
-			groups.add(QueryBuilder.start("groupId").is(gpId).put("manager").is(true).get());
-		}
-		return QueryBuilder.start("_id").is(id).or(QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-				QueryBuilder.start("shared")
-						.elemMatch(new QueryBuilder().or(groups.toArray(new DBObject[groups.size()])).get()).get());
-	}
-
 	private void authorizeGetPost(HttpServerRequest request, final UserInfos user, String serviceMethod,
 			final Handler<Boolean> handler) {
 		String blogId = request.params().get("blogId");
@@ -129,8 +128,7 @@ public class BlogResourcesProvider implements ResourcesProvider {
 		if (blogId != null && !blogId.trim().isEmpty() && postId != null && !postId.trim().isEmpty()) {
 			PostService.StateType state = getStateType(request);
 			if (PostService.StateType.PUBLISHED.equals(state)) {
-				QueryBuilder query = getDefaultQueryBuilder(user, serviceMethod, blogId);
-				executeCountQuery(request, "blogs", MongoQueryBuilder.build(query), 1, handler);
+				authorizeBlog(request, user, serviceMethod, handler);
 			} else {
 				//if not published, can i submit it?
 				hasRightOnPost(request, user, handler, PostController.SUBMIT_ACTION);
@@ -150,55 +148,40 @@ public class BlogResourcesProvider implements ResourcesProvider {
 		//
 		QueryBuilder query = QueryBuilder.start("_id").is(postId);
 		request.pause();
-		mongo.findOne("posts", MongoQueryBuilder.build(query), null, new JsonArray().add("blog"),
-				new Handler<Message<JsonObject>>() {
-					@Override
-					public void handle(Message<JsonObject> event) {
-						request.resume();
-						if ("ok".equals(event.body().getString("status"))) {
-							JsonObject res = event.body().getJsonObject("result");
-							if (res == null) {
-								handler.handle(false);
-								return;
-							}
-							/**
-							 * Is author?
-							 */
-							if (res.getJsonObject("author") != null
-									&& user.getUserId().equals(res.getJsonObject("author").getString("userId"))) {
-								handler.handle(true);
-								return;
-							}
-							if (res.getJsonObject("blog") != null
-									&& res.getJsonObject("blog").getJsonArray("shared") != null) {
-								/**
-								 * is author?
-								 */
-								String blogAuthorId = res.getJsonObject("blog")
-										.getJsonObject("author", new JsonObject()).getString("userId");
-								if (blogAuthorId != null && blogAuthorId.equals(user.getUserId())) {
-									handler.handle(true);
-									return;
-								}
-								/**
-								 * has right action?
-								 */
-								for (Object o : res.getJsonObject("blog").getJsonArray("shared")) {
-									if (!(o instanceof JsonObject))
-										continue;
-									JsonObject json = (JsonObject) o;
-									if (json != null && json.getBoolean(action, false)
-											&& (user.getUserId().equals(json.getString("userId"))
-													|| user.getGroupsIds().contains(json.getString("groupId")))) {
-										handler.handle(true);
-										return;
-									}
-								}
-							}
-							handler.handle(false);
-						}
-					}
+		mongo.findOne("posts", MongoQueryBuilder.build(query), POST_RIGHTS_KEYS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> event) {
+				JsonObject res = event.body().getJsonObject("result");
+				if (!"ok".equals(event.body().getString("status")) || res == null) {
+					request.resume();
+					handler.handle(false);
+					return;
+				}
+				/**
+				 * Is author?
+				 */
+				if (res.getJsonObject("author") != null
+						&& user.getUserId().equals(res.getJsonObject("author").getString("userId"))) {
+					request.resume();
+					handler.handle(true);
+					return;
+				}
+				/**
+				 * is blog author or has right action?
+				 */
+				String blogId = res.getJsonObject("blog", new JsonObject()).getString("$id");
+				if (blogId == null) {
+					request.resume();
+					handler.handle(false);
+					return;
+				}
+				aclCache.rightsOf(blogId, user, rights -> {
+					request.resume();
+					handler.handle(rights.isRight() && rights.right().getValue() != null
+							&& rights.right().getValue().has(action));
 				});
+			}
+		});
 	}
 
 	public static PostService.StateType getStateType(HttpServerRequest request) {
@@ -216,18 +199,4 @@ public class BlogResourcesProvider implements ResourcesProvider {
 		return state;
 	}
 
-	private void executeCountQuery(final HttpServerRequest request, String collection, JsonObject query,
-			final int expectedCountResult, final Handler<Boolean> handler) {
-		request.pause();
-		mongo.count(collection, query, new Handler<Message<JsonObject>>() {
-			@Override
-			public void handle(Message<JsonObject> event) {
-				request.resume();
-				JsonObject res = event.body();
-				handler.handle(res != null && "ok".equals(res.getString("status"))
-						&& expectedCountResult == res.getInteger("count"));
-			}
-		});
-	}
-
 }
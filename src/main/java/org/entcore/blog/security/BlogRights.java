@@ -0,0 +1,99 @@
+/*
+ * Copyright © "Open Digital Education" (SAS “WebServices pour l’Education”), 2014
+ *
+ * This program is published by "Open Digital Education" (SAS “WebServices pour l’Education”).
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https: //opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.blog.security;
+
+import fr.wseduc.webutils.security.SecureHttpServerRequest;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Effective rights of a user on one blog, resolved once by {@link BlogResourcesProvider} from the blog's
+ * ACL and attached to the request so that services do not query the blog again.
+ */
+public class BlogRights {
+	public static final String MANAGER_ACTION = "org-entcore-blog-controllers-BlogController|shareResource";
+	private static final String REQUEST_ATTRIBUTE = "blog.rights";
+
+	private final String blogId;
+	private final boolean author;
+	private final Set<String> actions;
+
+	BlogRights(String blogId, boolean author, Set<String> actions) {
+		this.blogId = blogId;
+		this.author = author;
+		this.actions = actions;
+	}
+
+	public String getBlogId() {
+		return blogId;
+	}
+
+	public boolean isAuthor() {
+		return author;
+	}
+
+	public boolean isManager() {
+		return author || actions.contains(MANAGER_ACTION);
+	}
+
+	public boolean has(String action) {
+		return author || actions.contains(action);
+	}
+
+	public void attach(HttpServerRequest request) {
+		if (request instanceof SecureHttpServerRequest) {
+			final JsonObject json = new JsonObject()
+					.put("blogId", blogId)
+					.put("author", author)
+					.put("actions", new JsonArray(new ArrayList<>(actions)));
+			((SecureHttpServerRequest) request).setAttribute(REQUEST_ATTRIBUTE, json.encode());
+		}
+	}
+
+	/**
+	 * @return the rights attached to the request by the resource filter for {@code blogId}, or null if none
+	 */
+	public static BlogRights of(HttpServerRequest request, String blogId) {
+		if (!(request instanceof SecureHttpServerRequest) || blogId == null) {
+			return null;
+		}
+		final String attribute = ((SecureHttpServerRequest) request).getAttribute(REQUEST_ATTRIBUTE);
+		if (attribute == null) {
+			return null;
+		}
+		final JsonObject json = new JsonObject(attribute);
+		if (!blogId.equals(json.getString("blogId"))) {
+			return null;
+		}
+		final Set<String> actions = new HashSet<>();
+		for (Object action : json.getJsonArray("actions", new JsonArray())) {
+			actions.add(action.toString());
+		}
+		return new BlogRights(blogId, json.getBoolean("author", false), actions);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © "Open Digital Education" (SAS “WebServices pour l’Education”), 2014
+ *
+ * This program is published by "Open Digital Education" (SAS “WebServices pour l’Education”).
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https: //opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.blog.security;
+
+import io.vertx.core.Handler;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.blog.search.AccessibleBlogs;
+import org.entcore.blog.services.BlogService;
+
+/**
+ * Propagates a change of the shares of a blog, whichever path made it: drops its compiled ACL on every instance,
+ * recomputes its {@link BlogPrincipals} and drops every cached accessible blogs list, the users gaining or losing
+ * access being unknown.
+ */
+public class BlogShareChanges {
+	private static final Logger log = LoggerFactory.getLogger(BlogShareChanges.class);
+	private final BlogService blogService;
+	private final BlogAclCache aclCache;
+	private final AccessibleBlogs accessibleBlogs;
+
+	public BlogShareChanges(BlogService blogService, BlogAclCache aclCache, AccessibleBlogs accessibleBlogs) {
+		this.blogService = blogService;
+		this.aclCache = aclCache;
+		this.accessibleBlogs = accessibleBlogs;
+	}
+
+	public void changed(final String blogId) {
+		changed(blogId, v -> {});
+	}
+
+	/**
+	 * @param done called once the principals are refreshed, successfully or not
+	 */
+	public void changed(final String blogId, final Handler<Void> done) {
+		if (aclCache != null) {
+			aclCache.invalidate(blogId);
+		}
+		blogService.refreshPrincipals(blogId, refreshed -> {
+			if (refreshed.isLeft()) {
+				log.error("Failed to refresh principals of blog " + blogId + ": " + refreshed.left().getValue());
+			}
+			if (accessibleBlogs != null) {
+				accessibleBlogs.invalidate(null);
+			}
+			done.handle(null);
+		});
+	}
+}
@@ -65,4 +65,9 @@ public interface BlogService {
 
 	void isBlogExists(Optional<String> blogId, String slug, Handler<Boolean> handler);
 
+	/**
+	 * Recomputes the denormalized principals of the blog from its author and shared entries.
+	 */
+	void refreshPrincipals(String blogId, Handler<Either<String, JsonObject>> result);
+
 }
@@ -23,6 +23,8 @@
 package org.entcore.blog.services;
 
 import fr.wseduc.webutils.Either;
+import org.entcore.blog.core.pagination.PostCursor;
+import org.entcore.blog.security.BlogRights;
 import org.entcore.common.user.UserInfos;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonArray;
@@ -41,6 +43,9 @@ public interface PostService {
 
 	List<String> UPDATABLE_FIELDS = Arrays.asList("title", "content", "modified");
 
+	/** Per-state post counters maintained on each blog document, e.g. postCounters.PUBLISHED */
+	String COUNTERS_FIELD = "postCounters";
+
 	void create(String blogId, JsonObject post, UserInfos author, Handler<Either<String, JsonObject>> result);
 
 	void update(String postId, JsonObject post, UserInfos user, Handler<Either<String, JsonObject>> result);
@@ -50,19 +55,36 @@ public interface PostService {
 	void get(String blogId, String postId, StateType state, Handler<Either<String, JsonObject>> result);
 
 	default void list(String blogId, UserInfos user, Integer page, int limit, String search, final Set<String> states, Handler<Either<String, JsonArray>> result){
-		list(blogId, user, page, limit, search, states, false, result);
+		list(blogId, user, null, page, limit, search, states, false, result);
 	}
-	void list(String blogId, UserInfos user, Integer page, int limit, String search, final Set<String> states, boolean withContent, Handler<Either<String, JsonArray>> result);
 
-	void listWithComments(String blogId, UserInfos user, Integer page, int limit, String search, final Set<String> states, boolean withContent, Handler<Either<String, JsonArray>> result);
+	/**
+	 * Methods taking {@link BlogRights} reuse the rights resolved by the resource filter; when null, the rights of
+	 * {@code user} on the blog are read from the database.
+	 */
+	void list(String blogId, UserInfos user, BlogRights rights, Integer page, int limit, String search, final Set<String> states, boolean withContent, Handler<Either<String, JsonArray>> result);
+
+	void listWithComments(String blogId, UserInfos user, BlogRights rights, Integer page, int limit, String search, final Set<String> states, boolean withContent, Handler<Either<String, JsonArray>> result);
 
-	void list(String blogId, StateType state, UserInfos user, Integer page, int limit, String search, Handler<Either<String, JsonArray>> result);
+	void list(String blogId, StateType state, UserInfos user, BlogRights rights, Integer page, int limit, String search, Handler<Either<String, JsonArray>> result);
 
 	void listPublic(String blogId, Integer page, int limit, String search, Handler<Either<String, JsonArray>> result);
 
+	void listAfter(String blogId, UserInfos user, BlogRights rights, PostCursor after, int limit, String search, final Set<String> states, Handler<Either<String, JsonArray>> result);
+
+	void listWithCommentsAfter(String blogId, UserInfos user, BlogRights rights, PostCursor after, int limit, String search, final Set<String> states, Handler<Either<String, JsonArray>> result);
+
+	void listAfter(String blogId, StateType state, UserInfos user, BlogRights rights, PostCursor after, int limit, String search, Handler<Either<String, JsonArray>> result);
+
+	void listPublicAfter(String blogId, PostCursor after, int limit, String search, Handler<Either<String, JsonArray>> result);
+
+	void listLatestPublished(List<String> blogIds, int limit, Handler<Either<String, JsonObject>> result);
+
+	void listLinkable(List<String> blogIds, String titlePrefix, int limit, Handler<Either<String, JsonArray>> result);
+
 	void listOnePublic(String blogId, String postId, Handler<Either<String, JsonArray>> result);
 
-	void listOne(String blogId, String postId, final UserInfos user, final Handler<Either<String, JsonArray>> result);
+	void listOne(String blogId, String postId, final UserInfos user, BlogRights rights, final Handler<Either<String, JsonArray>> result);
 
 	void submit(String blogId, String postId, UserInfos user, Handler<Either<String, JsonObject>> result);
 
@@ -76,15 +98,27 @@ public interface PostService {
 	void updateComment(String postId, final String commentId, final String comment, final UserInfos coauthor,
 				  final Handler<Either<String, JsonObject>> result);
 
-	void deleteComment(String blogId, String commentId, UserInfos author, Handler<Either<String, JsonObject>> result);
+	void deleteComment(String blogId, String commentId, UserInfos author, BlogRights rights, Handler<Either<String, JsonObject>> result);
 
 	void listComment(String blogId, String postId, UserInfos author, Handler<Either<String, JsonArray>> result);
 
 	void publishComment(String blogId, String commentId, Handler<Either<String, JsonObject>> result);
 
-	void counter(final String blogId, final UserInfos user, final Handler<Either<String, JsonArray>> result);
+	void counter(final String blogId, final UserInfos user, BlogRights rights, final Handler<Either<String, JsonArray>> result);
 
 	void count(final String blogId, final StateType state, final Handler<Either<String, Integer>> result);
 
+	void repairCounters(final Handler<Either<String, JsonObject>> result);
+
 	void updateAllContents(UserInfos user, List<JsonObject> posts, Handler<Either<String, JsonArray>> handler);
+
+	/**
+	 * Ids of the posts of the blog visible to the user whose content references workspace documents, by ascending id
+	 * from {@code afterId} excluded, or from the first one if null.
+	 */
+	void listReferencingDocuments(String blogId, UserInfos user, BlogRights rights, String afterId, int limit, Handler<Either<String, JsonArray>> result);
+
+	void countReferencingDocuments(String blogId, UserInfos user, BlogRights rights, Handler<Either<String, Integer>> result);
+
+	void listContents(List<String> postIds, Handler<Either<String, JsonArray>> result);
 }
@@ -26,6 +26,9 @@ import com.mongodb.QueryBuilder;
 import fr.wseduc.mongodb.MongoQueryBuilder;
 import fr.wseduc.mongodb.MongoUpdateBuilder;
 import io.vertx.core.Vertx;
+import org.entcore.blog.core.constants.Field;
+import org.entcore.blog.security.BlogPrincipals;
+import org.entcore.blog.security.BlogShareChanges;
 import org.entcore.common.service.impl.MongoDbRepositoryEvents;
 import org.entcore.common.folders.impl.DocumentHelper;
 import io.vertx.core.Handler;
@@ -38,9 +41,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class BlogRepositoryEvents extends MongoDbRepositoryEvents {
+	private final BlogShareChanges shareChanges;
 
-	public BlogRepositoryEvents(Vertx vertx) {
+	public BlogRepositoryEvents(Vertx vertx, BlogShareChanges shareChanges) {
 		super(vertx);
+		this.shareChanges = shareChanges;
 
 		this.collectionNameToImportPrefixMap.put(DefaultBlogService.BLOG_COLLECTION, "blog_");
 		this.collectionNameToImportPrefixMap.put(DefaultPostService.POST_COLLECTION, "post_");
@@ -85,6 +90,10 @@ public class BlogRepositoryEvents extends MongoDbRepositoryEvents {
 						{
 							JsonObject blog = ((JsonObject) elem);
 							blog.put("title", prefixMap.get(DefaultBlogService.BLOG_COLLECTION) + blog.getString("title"));
+							blog.remove(BlogPrincipals.FIELD);
+							blog.remove(Field.TITLE_NORMALIZED);
+							blog.remove(BlogVisibilitySwitch.FIELD);
+							blog.remove(IngestOutbox.FIELD);
 							DocumentHelper.clearComments(blog);
 						});
 
@@ -104,6 +113,9 @@ public class BlogRepositoryEvents extends MongoDbRepositoryEvents {
 									{
 										JsonObject post = ((JsonObject) elem);
 										post.put("title", prefixMap.get(DefaultPostService.POST_COLLECTION) + post.getString("title"));
+										post.remove(Field.TITLE_NORMALIZED);
+										post.remove(Field.DOCUMENT_IDS);
+										post.remove(IngestOutbox.FIELD);
 										DocumentHelper.clearComments(post);
 									});
 									results.addAll(results2);
@@ -166,6 +178,16 @@ public class BlogRepositoryEvents extends MongoDbRepositoryEvents {
 			document.remove("owner");
 			document.remove("slug");
 			document.put("visibility", "OWNER");
+			document.remove(IngestOutbox.FIELD);
+		}
+		if (DefaultBlogService.BLOG_COLLECTION.equals(collectionName)) {
+			// imported blogs are owned by the importer and not shared
+			document.put(BlogPrincipals.FIELD, BlogPrincipals.of(new JsonObject()
+					.put("author", new JsonObject().put("userId", userId))));
+			DefaultBlogService.normalizeSearchFields(document);
+		} else if (DefaultPostService.POST_COLLECTION.equals(collectionName)) {
+			DefaultPostService.normalizeSearchFields(document);
+			document.put(Field.DOCUMENT_IDS, new JsonArray(PostContent.parse(document.getString("content")).getDocumentIds()));
 		}
 
 		return document;
@@ -198,7 +220,7 @@ public class BlogRepositoryEvents extends MongoDbRepositoryEvents {
 		modifier.pull("shared", MongoQueryBuilder.build(QueryBuilder.start("userId").in(userIds)));
 
 		final String collection = DefaultBlogService.BLOG_COLLECTION;
-		mongo.update(collection, criteria, modifier.build(), false, true, new Handler<Message<JsonObject>>() {
+		removeShares(criteria, modifier.build(), new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> event) {
 				if (!"ok".equals(event.body().getString("status"))) {
@@ -270,6 +292,47 @@ public class BlogRepositoryEvents extends MongoDbRepositoryEvents {
 	}
 
 	@Override
-	public void deleteGroups(JsonArray groups) {}
+	public void deleteGroups(JsonArray groups) {
+		if (groups == null || groups.isEmpty()) {
+			return;
+		}
+		final List<String> groupIds = new ArrayList<>();
+		for (Object o : groups) {
+			if (o instanceof JsonObject && ((JsonObject) o).getString("group") != null) {
+				groupIds.add(((JsonObject) o).getString("group"));
+			}
+		}
+		if (groupIds.isEmpty()) {
+			return;
+		}
+		final JsonObject criteria = MongoQueryBuilder.build(QueryBuilder.start("shared.groupId").in(groupIds));
+		final MongoUpdateBuilder modifier = new MongoUpdateBuilder();
+		modifier.pull("shared", MongoQueryBuilder.build(QueryBuilder.start("groupId").in(groupIds)));
+		removeShares(criteria, modifier.build(), event -> {
+			if (!"ok".equals(event.body().getString("status"))) {
+				log.error("Error deleting groups shared in collection " + DefaultBlogService.BLOG_COLLECTION +
+						" : " + event.body().getString("message"));
+			}
+		});
+	}
+
+	/**
+	 * Pulls shares from the blogs matching {@code criteria}, then propagates the change of each blog, so that its
+	 * principals stop granting access to the removed users or groups.
+	 */
+	private void removeShares(JsonObject criteria, JsonObject modifier, Handler<Message<JsonObject>> handler) {
+		final String collection = DefaultBlogService.BLOG_COLLECTION;
+		mongo.find(collection, criteria, null, new JsonObject().put("_id", 1), found -> {
+			final JsonArray blogs = found.body().getJsonArray("results", new JsonArray());
+			mongo.update(collection, criteria, modifier, false, true, event -> {
+				if ("ok".equals(event.body().getString("status")) && shareChanges != null) {
+					for (Object blog : blogs) {
+						shareChanges.changed(((JsonObject) blog).getString("_id"));
+					}
+				}
+				handler.handle(event);
+			});
+		});
+	}
 
 }
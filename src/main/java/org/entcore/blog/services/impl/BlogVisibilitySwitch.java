@@ -0,0 +1,316 @@
+package org.entcore.blog.services.impl;
+
+import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.webutils.Either;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.blog.services.PostService;
+import org.entcore.common.service.VisibilityFilter;
+import org.entcore.common.user.UserInfos;
+import org.entcore.common.utils.ResourceUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Switches the visibility of the workspace documents referenced by the posts of a blog, in the background.
+ * Posts are read by pages of {@code visibility-batch-size} ids in _id order, at most {@code visibility-max-in-flight}
+ * batches being changed at once, so that memory and workspace calls stay bounded whatever the size of the blog.
+ * The progress is kept on the blog, under {@link #FIELD}, so that it can be polled from any instance.
+ * A workspace call which fails, times out or replies an error is retried up to {@code visibility-attempts} times,
+ * {@code visibility-retry-delay} ms apart, before the switch stops as FAILED with the error in its progress.
+ */
+public class BlogVisibilitySwitch {
+    public static final String FIELD = "visibilitySwitch";
+    private static final Logger log = LoggerFactory.getLogger(BlogVisibilitySwitch.class);
+    private final Vertx vertx;
+    private final MongoDb mongo;
+    private final PostService postService;
+    private final PostContentProcessor contentProcessor;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int attempts;
+    private final long retryDelay;
+    private final Map<String, Job> running = new ConcurrentHashMap<>();
+
+    public BlogVisibilitySwitch(Vertx vertx, MongoDb mongo, PostService postService, PostContentProcessor contentProcessor,
+                                int batchSize, int maxInFlight, int attempts, long retryDelay) {
+        this.vertx = vertx;
+        this.mongo = mongo;
+        this.postService = postService;
+        this.contentProcessor = contentProcessor;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.attempts = Math.max(1, attempts);
+        this.retryDelay = retryDelay;
+    }
+
+    public static BlogVisibilitySwitch create(Vertx vertx, MongoDb mongo, PostService postService,
+                                              PostContentProcessor contentProcessor, JsonObject config) {
+        return new BlogVisibilitySwitch(vertx, mongo, postService, contentProcessor,
+                config.getInteger("visibility-batch-size", 50), config.getInteger("visibility-max-in-flight", 2),
+                config.getInteger("visibility-attempts", 3), config.getLong("visibility-retry-delay", 2000L));
+    }
+
+    /**
+     * Starts the switch of the documents of {@code blogId} to {@code visibility}, cancelling the one running on this
+     * instance for the same blog.
+     * @return the initial progress
+     */
+    public JsonObject start(String blogId, UserInfos user, String visibility) {
+        final Job job = new Job(blogId, user, visibility);
+        final Job previous = running.put(blogId, job);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        job.start();
+        return job.progress();
+    }
+
+    /**
+     * @return the progress of the last switch of {@code blogId}, empty if there was none
+     */
+    public void progress(String blogId, Handler<Either<String, JsonObject>> handler) {
+        mongo.findOne(DefaultBlogService.BLOG_COLLECTION, new JsonObject().put("_id", blogId), new JsonObject().put(FIELD, 1), event -> {
+            if ("ok".equals(event.body().getString("status"))) {
+                final JsonObject blog = event.body().getJsonObject("result", new JsonObject());
+                handler.handle(new Either.Right<>(blog.getJsonObject(FIELD, new JsonObject())));
+            } else {
+                handler.handle(new Either.Left<>(event.body().getString("message", "")));
+            }
+        });
+    }
+
+    private class Job {
+        private final String id = UUID.randomUUID().toString();
+        private final String blogId;
+        private final UserInfos user;
+        private final String visibility;
+        private final VisibilityFilter eVisibility;
+        private final VisibilityFilter inverse;
+        private String lastId;
+        private boolean fetching;
+        private boolean exhausted;
+        private int inFlight;
+        private int total = -1;
+        private int processed;
+        private int changed;
+        private String error;
+        private volatile boolean cancelled;
+
+        private Job(String blogId, UserInfos user, String visibility) {
+            this.blogId = blogId;
+            this.user = user;
+            this.visibility = visibility;
+            this.eVisibility = VisibilityFilter.valueOf(visibility);
+            this.inverse = eVisibility.equals(VisibilityFilter.PUBLIC) ? VisibilityFilter.OWNER : VisibilityFilter.PUBLIC;
+        }
+
+        private void start() {
+            save(true).onComplete(claimed -> {
+                if (claimed.failed()) {
+                    // its progress could not be polled
+                    cancelled = true;
+                    running.remove(blogId, this);
+                    return;
+                }
+                postService.countReferencingDocuments(blogId, user, null, count -> {
+                    if (count.isRight()) {
+                        total = count.right().getValue();
+                    }
+                    pump();
+                });
+            });
+        }
+
+        private JsonObject progress() {
+            final String status = error != null ? "FAILED" : (exhausted && inFlight == 0 ? "DONE" : "RUNNING");
+            final JsonObject progress = new JsonObject()
+                    .put("id", id)
+                    .put("visibility", visibility)
+                    .put("status", status)
+                    .put("processed", processed)
+                    .put("changed", changed)
+                    .put("modified", MongoDb.now());
+            if (total >= 0) {
+                progress.put("total", total);
+            }
+            if (error != null) {
+                progress.put("error", error);
+            }
+            return progress;
+        }
+
+        /**
+         * Reads the next page of ids while fewer than {@code maxInFlight} batches are being changed.
+         */
+        private void pump() {
+            if (cancelled) {
+                return;
+            }
+            if ((exhausted || error != null) && inFlight == 0) {
+                running.remove(blogId, this);
+                saveLast(1);
+                return;
+            }
+            if (fetching || exhausted || error != null || inFlight >= maxInFlight) {
+                return;
+            }
+            fetching = true;
+            postService.listReferencingDocuments(blogId, user, null, lastId, batchSize, page -> {
+                fetching = false;
+                if (page.isLeft()) {
+                    error = page.left().getValue();
+                    pump();
+                    return;
+                }
+                final List<String> postIds = new ArrayList<>();
+                for (Object post : page.right().getValue()) {
+                    postIds.add(((JsonObject) post).getString("_id"));
+                }
+                exhausted = postIds.size() < batchSize;
+                if (!postIds.isEmpty()) {
+                    lastId = postIds.get(postIds.size() - 1);
+                    inFlight++;
+                    changeBatch(postIds).onComplete(ar -> {
+                        inFlight--;
+                        if (ar.succeeded()) {
+                            processed += postIds.size();
+                            changed += ar.result();
+                        } else if (error == null) {
+                            error = ar.cause().getMessage();
+                        }
+                        save(false).onComplete(saved -> pump());
+                    });
+                }
+                pump();
+            });
+        }
+
+        /**
+         * @return the number of posts whose content changed
+         */
+        private Future<Integer> changeBatch(List<String> postIds) {
+            final Promise<JsonArray> contents = Promise.promise();
+            postService.listContents(postIds, event -> {
+                if (event.isRight()) {
+                    contents.complete(event.right().getValue());
+                } else {
+                    contents.fail(event.left().getValue());
+                }
+            });
+            final Map<String, JsonObject> postByIds = new HashMap<>();
+            final Map<String, List<String>> idsByPost = new HashMap<>();
+            return contents.future().compose(posts -> contentProcessor.submit(() -> {
+                final List<String> allIds = new ArrayList<>();
+                for (Object elem : posts) {
+                    final JsonObject post = (JsonObject) elem;
+                    final List<String> currentIds = ResourceUtils.extractIds(post.getString("content"), inverse);
+                    if (!currentIds.isEmpty()) {
+                        idsByPost.put(post.getString("_id"), currentIds);
+                        postByIds.put(post.getString("_id"), post);
+                    }
+                    allIds.addAll(currentIds);
+                }
+                return allIds;
+            })).compose(ids -> {
+                if (ids.isEmpty()) {
+                    return Future.succeededFuture(0);
+                }
+                final JsonObject j = new JsonObject()
+                        .put("action", "changeVisibility")
+                        .put("visibility", visibility)
+                        .put("documentIds", new JsonArray(ids));
+                return changeVisibility(j, 1).compose(v -> contentProcessor.submit(() -> {
+                    final List<JsonObject> toSave = new ArrayList<>(postByIds.values());
+                    for (JsonObject post : toSave) {
+                        post.put("content", ResourceUtils.transformUrlTo(post.getString("content"),
+                                idsByPost.get(post.getString("_id")), eVisibility));
+                    }
+                    return toSave;
+                })).compose(toSave -> {
+                    final Promise<Integer> saved = Promise.promise();
+                    postService.updateAllContents(user, toSave, res -> {
+                        if (res.isRight()) {
+                            saved.complete(toSave.size());
+                        } else {
+                            saved.fail(res.left().getValue());
+                        }
+                    });
+                    return saved.future();
+                });
+            });
+        }
+
+        /**
+         * Sends the change of visibility to the workspace, posts are only rewritten once it replied ok.
+         */
+        private Future<Void> changeVisibility(JsonObject request, int attempt) {
+            final Promise<Void> promise = Promise.promise();
+            vertx.eventBus().<JsonObject>request("org.entcore.workspace", request, r -> {
+                final String failure = r.failed() ? r.cause().getMessage() :
+                        "ok".equals(r.result().body().getString("status")) ? null :
+                                r.result().body().getString("message", "workspace.visibility.error");
+                if (failure == null) {
+                    promise.complete();
+                } else if (attempt >= attempts || cancelled) {
+                    promise.fail(failure);
+                } else {
+                    log.warn(String.format("[Blog@%s::changeVisibility] Retrying the visibility change of the documents of %s: %s",
+                            BlogVisibilitySwitch.class.getSimpleName(), blogId, failure));
+                    vertx.setTimer(retryDelay, id -> changeVisibility(request, attempt + 1).onComplete(promise));
+                }
+            });
+            return promise.future();
+        }
+
+        /**
+         * Saves the final progress, retried as the workspace calls are: pollers would otherwise see RUNNING forever.
+         */
+        private void saveLast(int attempt) {
+            save(false).onFailure(e -> {
+                if (attempt < attempts) {
+                    vertx.setTimer(retryDelay, id -> saveLast(attempt + 1));
+                }
+            });
+        }
+
+        /**
+         * @param claim whether this switch takes over the progress of the blog, otherwise the progress of a newer
+         *              switch of the same blog, started on another instance, is left untouched and this one stops
+         */
+        private Future<Void> save(boolean claim) {
+            final JsonObject progress = progress();
+            final JsonObject query = new JsonObject().put("_id", blogId);
+            if (!claim) {
+                query.put(FIELD + ".id", id);
+            }
+            final Promise<Void> promise = Promise.promise();
+            mongo.update(DefaultBlogService.BLOG_COLLECTION, query, new JsonObject().put("$set", new JsonObject().put(FIELD, progress)), event -> {
+                if (!"ok".equals(event.body().getString("status"))) {
+                    log.error(String.format("[Blog@%s::save] Failed to save the visibility switch progress of %s: %s",
+                            BlogVisibilitySwitch.class.getSimpleName(), blogId, event.body().getString("message", "")));
+                    promise.fail(event.body().getString("message", ""));
+                    return;
+                }
+                if (!claim && event.body().getInteger("number", 1) == 0) {
+                    // superseded by a newer switch of the blog, or the blog is gone
+                    cancelled = true;
+                    running.remove(blogId, this);
+                }
+                promise.complete();
+            });
+            return promise.future();
+        }
+    }
+}
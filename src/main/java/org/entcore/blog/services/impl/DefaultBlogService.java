@@ -22,20 +22,25 @@
 
 package org.entcore.blog.services.impl;
 
-import com.mongodb.DBObject;
 import com.mongodb.QueryBuilder;
 import fr.wseduc.mongodb.MongoDb;
 import fr.wseduc.mongodb.MongoQueryBuilder;
 import fr.wseduc.mongodb.MongoUpdateBuilder;
 import fr.wseduc.webutils.Either;
 import fr.wseduc.webutils.Utils;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import org.entcore.blog.core.constants.Field;
 import org.entcore.blog.explorer.BlogExplorerPlugin;
+import org.entcore.blog.search.SearchUpdates;
+import org.entcore.blog.search.SearchWordTokenizer;
+import org.entcore.blog.security.BlogPrincipals;
 import org.entcore.blog.services.BlogService;
 import org.entcore.blog.services.PostService;
 import org.entcore.common.explorer.IdAndVersion;
@@ -52,12 +57,18 @@ import static java.lang.System.currentTimeMillis;
 public class DefaultBlogService implements BlogService{
 	protected static final Logger log = LoggerFactory.getLogger(DefaultBlogService.class);
 	protected static final String BLOG_COLLECTION = "blogs";
+	// internal fields not returned to clients
+	private static final JsonObject HIDDEN_KEYS = new JsonObject().put(BlogPrincipals.FIELD, 0).put(Field.TITLE_NORMALIZED, 0)
+			.put(BlogVisibilitySwitch.FIELD, 0).put(IngestOutbox.FIELD, 0);
 
 	private final MongoDb mongo;
 	private final int pagingSize;
 	private final int searchWordMinSize;
 	private final PostService postService;
 	private final BlogExplorerPlugin plugin;
+	// optional collaborators, left null when the service runs without them (tests)
+	private SearchUpdates searchUpdates;
+	private IngestOutbox outbox;
 
 	public DefaultBlogService(MongoDb mongo, PostService postService, int pagingSize, int searchWordMinSize, BlogExplorerPlugin plugin) {
 		this.mongo = mongo;
@@ -67,6 +78,16 @@ public class DefaultBlogService implements BlogService{
 		this.searchWordMinSize = searchWordMinSize;
 	}
 
+	public DefaultBlogService setSearchUpdates(SearchUpdates searchUpdates) {
+		this.searchUpdates = searchUpdates;
+		return this;
+	}
+
+	public DefaultBlogService setOutbox(IngestOutbox outbox) {
+		this.outbox = outbox;
+		return this;
+	}
+
 	@Override
 	public BlogExplorerPlugin getPlugin() {
 		return plugin;
@@ -103,9 +124,19 @@ public class DefaultBlogService implements BlogService{
         }
 		JsonObject b = Utils.validAndGet(blog, FIELDS, fields);
 		if (validationError(result, b)) return;
+		b.put(BlogPrincipals.FIELD, BlogPrincipals.of(b));
+		normalizeSearchFields(b);
 		plugin.setIngestJobStateAndVersion(b, IngestJobState.TO_BE_SENT, version);
+		if (outbox != null) {
+			// saved with the blog: a failed notification is re-sent by the outbox
+			b.put(IngestOutbox.FIELD, outbox.marker(author, version));
+		}
 		plugin.create(author,b, false, folderId).onComplete((e) -> {
 			if(e.succeeded()){
+				if (searchUpdates != null) {
+					searchUpdates.blogChanged(e.result());
+				}
+				acknowledgeOutbox(e.result(), version);
 				result.handle(new Either.Right<>(blog.put("_id", e.result())));
 			}else{
 				result.handle(new Either.Left<>(e.cause().getMessage()));
@@ -142,23 +173,33 @@ public class DefaultBlogService implements BlogService{
 		//
 		JsonObject b = Utils.validAndGet(blog, UPDATABLE_FIELDS, Collections.<String>emptyList());
 		if (validationError(result, b)) return;
+		normalizeSearchFields(b);
 		QueryBuilder query = QueryBuilder.start("_id").is(blogId);
 		MongoUpdateBuilder modifier = new MongoUpdateBuilder();
 		for (String attr: b.fieldNames()) {
 			modifier.set(attr, b.getValue(attr));
 		}
 		plugin.setIngestJobStateAndVersion(modifier, IngestJobState.TO_BE_SENT, version);
+		if (outbox != null) {
+			// in the same update: the marker exists if and only if the write happened
+			modifier.set(IngestOutbox.FIELD, outbox.marker(user, version));
+		}
 		mongo.update(BLOG_COLLECTION, MongoQueryBuilder.build(query), modifier.build(),event-> {
 			final Either<String, JsonObject> either = Utils.validResult(event);
 			if(either.isLeft()){
 				log.error("Failed to update blog: ", either.left().getValue());
 				result.handle(either);
 			}else{
+				if (searchUpdates != null) {
+					searchUpdates.blogChanged(blogId);
+				}
 				blog.put("_id", blogId);
 				plugin.setVersion(blog, version);
 				plugin.notifyUpsert(user, blog).onComplete(e->{
 					if(e.failed()){
 						log.error("Failed to notify upsert blog: ", e.cause());
+					} else {
+						acknowledgeOutbox(blogId, version);
 					}
 					result.handle(either);
 				});
@@ -170,36 +211,75 @@ public class DefaultBlogService implements BlogService{
 	public void delete(UserInfos user, final String blogId, final Handler<Either<String, JsonObject>> result) {
 		final long now = currentTimeMillis();
 		QueryBuilder q = QueryBuilder.start("blog.$id").is(blogId);
-		mongo.delete("posts", MongoQueryBuilder.build(q), new Handler<Message<JsonObject>>() {
-			@Override
-			public void handle(Message<JsonObject> res) {
-				if ("ok".equals(res.body().getString("status"))) {
-					QueryBuilder query = QueryBuilder.start("_id").is(blogId);
-					mongo.delete(BLOG_COLLECTION, MongoQueryBuilder.build(query), event-> {
-						final Either<String, JsonObject> either = Utils.validResult(event);
-						if(either.isLeft()){
-							log.error("Failed to delete blog: ", either.left().getValue());
-							result.handle(either);
-						}else{
-							plugin.notifyDeleteById(user, new IdAndVersion(blogId, now)).onComplete(e->{
-								if(e.failed()){
-									log.error("Failed to notify delete blog: ", e.cause());
-								}
+		appendDeletion(blogId, user, now).onComplete(appended -> {
+			mongo.delete("posts", MongoQueryBuilder.build(q), new Handler<Message<JsonObject>>() {
+				@Override
+				public void handle(Message<JsonObject> res) {
+					if ("ok".equals(res.body().getString("status"))) {
+						QueryBuilder query = QueryBuilder.start("_id").is(blogId);
+						mongo.delete(BLOG_COLLECTION, MongoQueryBuilder.build(query), event-> {
+							final Either<String, JsonObject> either = Utils.validResult(event);
+							if(either.isLeft()){
+								log.error("Failed to delete blog: ", either.left().getValue());
+								acknowledgeDeletion(blogId, now);
 								result.handle(either);
-							});
-						}
-					});
-				} else {
-					result.handle(Utils.validResult(res));
+							}else{
+								if (searchUpdates != null) {
+									searchUpdates.blogRemoved(blogId);
+								}
+								plugin.notifyDeleteById(user, new IdAndVersion(blogId, now)).onComplete(e->{
+									if(e.failed()){
+										log.error("Failed to notify delete blog: ", e.cause());
+									} else {
+										acknowledgeDeletion(blogId, now);
+									}
+									result.handle(either);
+								});
+							}
+						});
+					} else {
+						acknowledgeDeletion(blogId, now);
+						result.handle(Utils.validResult(res));
+					}
 				}
+			});
+		});
+	}
+
+	/**
+	 * Records the deletion of the blog in the outbox, before the delete itself. A failure is only logged: the delete
+	 * goes on, notified as before by the service.
+	 */
+	private Future<Void> appendDeletion(String blogId, UserInfos user, long version) {
+		if (outbox == null) {
+			return Future.succeededFuture();
+		}
+		final Promise<Void> promise = Promise.promise();
+		outbox.appendDeletion(IngestOutbox.BLOG, blogId, blogId, user, version).onComplete(ar -> {
+			if (ar.failed()) {
+				log.error("Failed to record the deletion of blog " + blogId + " in the outbox: ", ar.cause());
 			}
+			promise.complete();
 		});
+		return promise.future();
+	}
+
+	private void acknowledgeDeletion(String blogId, long version) {
+		if (outbox != null) {
+			outbox.acknowledgeDeletion(IngestOutbox.BLOG, blogId, version);
+		}
+	}
+
+	private void acknowledgeOutbox(String blogId, long version) {
+		if (outbox != null) {
+			outbox.acknowledge(IngestOutbox.BLOG, blogId, version);
+		}
 	}
 
 	@Override
 	public void get(String blogId, final Handler<Either<String, JsonObject>> result) {
 		QueryBuilder query = QueryBuilder.start("_id").is(blogId);
-		mongo.findOne(BLOG_COLLECTION, MongoQueryBuilder.build(query),
+		mongo.findOne(BLOG_COLLECTION, MongoQueryBuilder.build(query), HIDDEN_KEYS,
 				new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> event) {
@@ -215,6 +295,18 @@ public class DefaultBlogService implements BlogService{
 			Either<String,JsonObject> eitherBlog = Utils.validResult(event);
 			if(eitherBlog.isRight()){
 				JsonObject blog = eitherBlog.right().getValue();
+				final JsonObject counters = blog.getJsonObject(PostService.COUNTERS_FIELD);
+				final Integer published = counters == null ? null : counters.getInteger(PostService.StateType.PUBLISHED.name());
+				if (published != null && published >= 0) {
+					blog.put("countAll", published);
+					result.handle(eitherBlog);
+					return;
+				}
+				if (published != null) {
+					// the counters drifted from the posts, they are reset by the next repairCounters
+					log.warn("Negative published post counter of blog " + blog.getString("_id") + ": " + published +
+							", its posts are counted instead");
+				}
 				postService.count(blog.getString("_id"), PostService.StateType.PUBLISHED,eventCount->{
 					if(eventCount.isRight()){
 						blog.put("countAll", eventCount.right().getValue());
@@ -255,16 +347,8 @@ public class DefaultBlogService implements BlogService{
 	@Override
 	public void list(UserInfos user, final Integer page, final String search, final Handler<Either<String, JsonArray>> result) {
 
-		List<DBObject> groups = new ArrayList<>();
-		groups.add(QueryBuilder.start("userId").is(user.getUserId()).get());
-		for (String gpId: user.getProfilGroupsIds()) {
-			groups.add(QueryBuilder.start("groupId").is(gpId).get());
-		}
-		QueryBuilder rightQuery = new QueryBuilder().or(
-				QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-				QueryBuilder.start("shared").elemMatch(
-				new QueryBuilder().or(groups.toArray(new DBObject[groups.size()])).get()
-		).get());
+		QueryBuilder rightQuery = QueryBuilder.start(BlogPrincipals.path(BlogPrincipals.ALL))
+				.in(BlogPrincipals.ids(user.getUserId(), user.getProfilGroupsIds()));
 
 		final QueryBuilder query;
 
@@ -272,7 +356,7 @@ public class DefaultBlogService implements BlogService{
 			final List<String> searchWords = checkAndComposeWordFromSearchText(search, this.searchWordMinSize);
 			if (!searchWords.isEmpty()) {
 				final QueryBuilder searchQuery = new QueryBuilder();
-				searchQuery.text(MongoDbSearchService.textSearchedComposition(searchWords));
+				searchQuery.text(MongoDbSearchService.textSearchedComposition(SearchWordTokenizer.normalize(searchWords)));
 				query = new QueryBuilder().and(rightQuery.get(), searchQuery.get());
 			} else {
 				query = null;
@@ -288,7 +372,7 @@ public class DefaultBlogService implements BlogService{
 
         if (page != null && query != null) {
 	        final int skip = (0 == page) ? -1 : page * this.pagingSize;
-	        mongo.find(BLOG_COLLECTION, MongoQueryBuilder.build(query), sort, null, skip, this.pagingSize, this.pagingSize,
+	        mongo.find(BLOG_COLLECTION, MongoQueryBuilder.build(query), sort, HIDDEN_KEYS, skip, this.pagingSize, this.pagingSize,
 			        new Handler<Message<JsonObject>>() {
 				        @Override
 				        public void handle(Message<JsonObject> event) {
@@ -296,7 +380,7 @@ public class DefaultBlogService implements BlogService{
 				        }
 			        });
         } else if (query != null) {
-	        mongo.find(BLOG_COLLECTION, MongoQueryBuilder.build(query), sort, null,
+	        mongo.find(BLOG_COLLECTION, MongoQueryBuilder.build(query), sort, HIDDEN_KEYS,
 			        new Handler<Message<JsonObject>>() {
 				        @Override
 				        public void handle(Message<JsonObject> event) {
@@ -306,25 +390,37 @@ public class DefaultBlogService implements BlogService{
         }
 	}
 
+	@Override
+	public void refreshPrincipals(final String blogId, final Handler<Either<String, JsonObject>> result) {
+		final JsonObject keys = new JsonObject().put("author", 1).put("shared", 1);
+		mongo.findOne(BLOG_COLLECTION, new JsonObject().put("_id", blogId), keys, event -> {
+			final Either<String, JsonObject> blog = Utils.validResult(event);
+			if (blog.isLeft() || blog.right().getValue().isEmpty()) {
+				result.handle(blog);
+				return;
+			}
+			final JsonObject b = blog.right().getValue();
+			// only if shares did not change meanwhile, the concurrent refresh writes the latest state
+			final JsonObject criteria = new JsonObject().put("_id", blogId).put("shared",
+					b.containsKey("shared") ? b.getValue("shared") : new JsonObject().put("$exists", false));
+			mongo.update(BLOG_COLLECTION, criteria,
+					new MongoUpdateBuilder().set(BlogPrincipals.FIELD, BlogPrincipals.of(b)).build(),
+					res -> result.handle(Utils.validResult(res)));
+		});
+	}
+
 	//TODO put this code in SearchUtils on entcore with (same code in searchengine app) and adding searchWordMinSize param
 	public static List<String> checkAndComposeWordFromSearchText(final String searchText, final int searchWordMinSize) {
-		final Set<String> searchWords = new HashSet<>();
+		return SearchWordTokenizer.words(searchText, searchWordMinSize, false);
+	}
 
-		if (searchText != null) {
-			//delete all useless spaces
-			final String searchTextTreaty = searchText.replaceAll("\\s+", " ").trim();
-			if (!searchTextTreaty.isEmpty()) {
-				final List<String> words = Arrays.asList(searchTextTreaty.split(" "));
-				//words search
-				for (String w : words) {
-					final String wTraity = w.replaceAll("(?!')\\p{Punct}", "");
-					if (wTraity.length() >= searchWordMinSize) {
-						searchWords.add(wTraity);
-					}
-				}
-			}
+	/**
+	 * Sets the normalized copy of the title matched by the title autocompletion.
+	 */
+	static void normalizeSearchFields(JsonObject blog) {
+		if (blog.containsKey(Field.TITLE)) {
+			blog.put(Field.TITLE_NORMALIZED, SearchWordTokenizer.normalize(blog.getString(Field.TITLE)));
 		}
-		return new ArrayList<>(searchWords);
 	}
 
 	private boolean validationError(Handler<Either<String, JsonObject>> result, JsonObject b) {
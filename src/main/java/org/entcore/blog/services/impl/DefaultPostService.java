@@ -29,13 +29,23 @@ import fr.wseduc.mongodb.MongoQueryBuilder;
 import fr.wseduc.mongodb.MongoUpdateBuilder;
 import fr.wseduc.webutils.Either;
 import fr.wseduc.webutils.Utils;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import org.entcore.blog.core.constants.Field;
+import org.entcore.blog.core.pagination.PostCursor;
 import org.entcore.blog.explorer.PostExplorerPlugin;
+import org.entcore.blog.search.SearchUpdates;
+import org.entcore.blog.search.SearchWordTokenizer;
+import org.entcore.blog.security.BlogAclCache;
+import org.entcore.blog.security.BlogPrincipals;
+import org.entcore.blog.security.BlogRights;
 import org.entcore.blog.services.BlogService;
 import org.entcore.blog.services.PostService;
 import org.entcore.common.explorer.IngestJobState;
@@ -45,14 +55,17 @@ import org.entcore.common.user.UserInfos;
 import org.entcore.common.utils.StringUtils;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
 public class DefaultPostService implements PostService {
 	protected static final Logger log = LoggerFactory.getLogger(DefaultBlogService.class);
 	private final String listPostAction;
-	private static final String MANAGER_ACTION = "org-entcore-blog-controllers-BlogController|shareResource";
+	private static final String MANAGER_ACTION = BlogRights.MANAGER_ACTION;
 
 	private final MongoDb mongo;
 	protected static final String POST_COLLECTION = "posts";
+	private static final String BLOG_COLLECTION = "blogs";
+	private static final int AGGREGATE_BATCH_SIZE = 1000;
 	private static final JsonObject defaultKeys = new JsonObject()
 			.put("author", 1)
 			.put("title", 1)
@@ -65,6 +78,12 @@ public class DefaultPostService implements PostService {
 
 	private final int searchWordMinSize;
 	private final PostExplorerPlugin plugin;
+	// optional collaborators, left null when the service runs without them (tests)
+	private PostViewCounter viewCounter;
+	private SearchUpdates searchUpdates;
+	private BlogAclCache aclCache;
+	private PostContentProcessor contentProcessor;
+	private IngestOutbox outbox;
 
 	public DefaultPostService(MongoDb mongo, int searchWordMinSize,String listPostAction, final PostExplorerPlugin plugin) {
 		this.mongo = mongo;
@@ -73,6 +92,31 @@ public class DefaultPostService implements PostService {
 		this.searchWordMinSize = searchWordMinSize;
 	}
 
+	public DefaultPostService setViewCounter(PostViewCounter viewCounter) {
+		this.viewCounter = viewCounter;
+		return this;
+	}
+
+	public DefaultPostService setSearchUpdates(SearchUpdates searchUpdates) {
+		this.searchUpdates = searchUpdates;
+		return this;
+	}
+
+	public DefaultPostService setAclCache(BlogAclCache aclCache) {
+		this.aclCache = aclCache;
+		return this;
+	}
+
+	public DefaultPostService setContentProcessor(PostContentProcessor contentProcessor) {
+		this.contentProcessor = contentProcessor;
+		return this;
+	}
+
+	public DefaultPostService setOutbox(IngestOutbox outbox) {
+		this.outbox = outbox;
+		return this;
+	}
+
 	@Override
 	public void create(String blogId, JsonObject post, UserInfos author,
 					   final Handler<Either<String, JsonObject>> result) {
@@ -95,116 +139,178 @@ public class DefaultPostService implements PostService {
 		JsonObject b = Utils.validAndGet(post, FIELDS, FIELDS);
 		if (validationError(result, b)) return;
 		b.put("sorted", now);
-		if (b.containsKey("content")) {
-			b.put("contentPlain",  StringUtils.stripHtmlTag(b.getString("content", "")));
-		}
-		plugin.setIngestJobStateAndVersion(b, IngestJobState.TO_BE_SENT, version);
-		mongo.save(POST_COLLECTION, b, MongoDbResult.validActionResultHandler(event -> {
-			if(event.isLeft()){
-				log.error("Failed to create post: ", event.left().getValue());
-				result.handle(event);
+		processContent(b).onComplete(processed -> {
+			if (processed.failed()) {
+				result.handle(new Either.Left<>(processed.cause().getMessage()));
 				return;
 			}
-			//#29106 avoid fetch after save
-			final String id = event.right().getValue().getString("_id");
-			b.put("_id", id);
-			//must set id before notify
-			plugin.notifyUpsert(blogId, author, b).onComplete(e->{
-				if(e.failed()){
-					plugin.setIngestJobState(b, IngestJobState.SEND_KO);
-					log.error("Failed to notify upsert post: ", e.cause());
-				} else {
-					plugin.setIngestJobState(b, IngestJobState.SENT);
+			normalizeSearchFields(b);
+			plugin.setIngestJobStateAndVersion(b, IngestJobState.TO_BE_SENT, version);
+			markPending(b, author, version);
+			mongo.save(POST_COLLECTION, b, MongoDbResult.validActionResultHandler(event -> {
+				if(event.isLeft()){
+					log.error("Failed to create post: ", event.left().getValue());
+					result.handle(event);
+					return;
 				}
-				// TODO JBER update here the state in mongo
-				result.handle(new Either.Right<>(b));
-			});
-		}));
+				//#29106 avoid fetch after save
+				final String id = event.right().getValue().getString("_id");
+				b.put("_id", id);
+				b.remove(IngestOutbox.FIELD);
+				updatePostCounters(blogId, null, StateType.DRAFT.name());
+				//must set id before notify
+				plugin.notifyUpsert(blogId, author, b).onComplete(e->{
+					if(e.failed()){
+						plugin.setIngestJobState(b, IngestJobState.SEND_KO);
+						log.error("Failed to notify upsert post: ", e.cause());
+					} else {
+						plugin.setIngestJobState(b, IngestJobState.SENT);
+						acknowledgeOutbox(id, version);
+					}
+					result.handle(new Either.Right<>(b));
+				});
+			}));
+		});
 	}
 
 	@Override
 	public void update(String postId, final JsonObject post, final UserInfos user, final Handler<Either<String, JsonObject>> result) {
 		final long version = System.currentTimeMillis();
-		final JsonObject jQuery = MongoQueryBuilder.build(QueryBuilder.start("_id").is(postId));
-		mongo.findOne(POST_COLLECTION, jQuery,  MongoDbResult.validActionResultHandler(event -> {
-			if(event.isLeft()){
-				result.handle(event);
-				return;
-			} else {
-				final JsonObject postFromDb = event.right().getValue().getJsonObject("result", new JsonObject());
-				final JsonObject now = MongoDb.now();
-				post.put("modified", now);
-				final JsonObject b = Utils.validAndGet(post, UPDATABLE_FIELDS, Collections.<String>emptyList());
-
-				if (validationError(result, b)) return;
-				if (b.containsKey("content")) {
-					b.put("contentPlain",  StringUtils.stripHtmlTag(b.getString("content", "")));
-				}
-
-				if (postFromDb.getJsonObject("firstPublishDate") != null) {
-					b.put("sorted", postFromDb.getJsonObject("firstPublishDate"));
-				} else {
-					b.put("sorted", now);
-				}
+		final JsonObject now = MongoDb.now();
+		post.put("modified", now);
+		final JsonObject b = Utils.validAndGet(post, UPDATABLE_FIELDS, Collections.<String>emptyList());
 
-				//republish post to make it go up
-				final boolean sorting = post.containsKey("sorted") && post.getBoolean("sorted", false);
-				if (sorting) {
-					b.put("sorted", now);
-				}
+		if (validationError(result, b)) return;
+		processContent(b).onComplete(processed -> {
+			if (processed.failed()) {
+				result.handle(new Either.Left<>(processed.cause().getMessage()));
+				return;
+			}
+			normalizeSearchFields(b);
 
+			// values are literals: a title starting with "$" must not be read as a field path
+			final JsonObject set = new JsonObject();
+			for (String attr: b.fieldNames()) {
+				set.put(attr, new JsonObject().put("$literal", b.getValue(attr)));
+			}
+			//republish post to make it go up
+			final boolean sorting = post.containsKey("sorted") && post.getBoolean("sorted", false);
+			if (sorting) {
+				set.put("sorted", new JsonObject().put("$literal", now));
+			} else {
+				set.put("sorted", new JsonObject().put("$ifNull", new JsonArray()
+						.add("$firstPublishDate").add(new JsonObject().put("$literal", now))));
 				//if user is author and is not sorting the post, draft state
-				if (!sorting && user.getUserId().equals(postFromDb.getJsonObject("author", new JsonObject()).getString("userId"))) {
-					b.put("state", StateType.DRAFT.name());
-				}
-
-				MongoUpdateBuilder modifier = new MongoUpdateBuilder();
-				for (String attr: b.fieldNames()) {
-					modifier.set(attr, b.getValue(attr));
-				}
-				plugin.setIngestJobStateAndVersion(b, IngestJobState.TO_BE_SENT, version);
-				mongo.update(POST_COLLECTION, jQuery, modifier.build(),
-						new Handler<Message<JsonObject>>() {
-							@Override
-							public void handle(Message<JsonObject> event) {
-								if ("ok".equals(event.body().getString("status"))) {
-									final JsonObject blogRef = postFromDb.getJsonObject("blog");
-									final String blogId = blogRef.getString("$id");
-									plugin.setIngestJobStateAndVersion(post, IngestJobState.TO_BE_SENT, version);
-									plugin.notifyUpsert(blogId, user, post.put("_id", postId)).onComplete(e->{
-										if(e.failed()){
-											log.error("Failed to notify upsert post: ", e.cause());
-										}
-										// TODO JBER update here status in mongo
-										final JsonObject r = new JsonObject().put("state", b.getString("state", postFromDb.getString("state")));
-											result.handle(new Either.Right<String, JsonObject>(r));
-									});
-								} else {
-									result.handle(new Either.Left<String, JsonObject>(event.body().getString("message", "")));
-								}
-							}
-						});
+				set.put("state", new JsonObject().put("$cond", new JsonArray()
+						.add(new JsonObject().put("$eq", new JsonArray().add("$author.userId").add(new JsonObject().put("$literal", user.getUserId()))))
+						.add(StateType.DRAFT.name())
+						.add("$state")));
 			}
-		})
-		);
 
+			// single atomic round trip, the pre-image gives the blog and the former state
+			final JsonObject fields = new JsonObject().put("blog", 1).put("state", 1).put("author.userId", 1);
+			if (outbox != null) {
+				// in the same update: the marker exists if and only if the write happened
+				set.put(IngestOutbox.FIELD, new JsonObject().put("$literal", outbox.marker(user, version)));
+			}
+			findAndModify(MongoQueryBuilder.build(QueryBuilder.start("_id").is(postId)), set, fields, event -> {
+				if (event.isLeft()) {
+					result.handle(new Either.Left<>(event.left().getValue()));
+					return;
+				}
+				final JsonObject postFromDb = event.right().getValue();
+				if (postFromDb == null) {
+					result.handle(new Either.Left<>("post.not.found"));
+					return;
+				}
+				final String previousState = postFromDb.getString("state");
+				final String state = !sorting && user.getUserId().equals(postFromDb.getJsonObject("author", new JsonObject()).getString("userId")) ?
+						StateType.DRAFT.name() : previousState;
+				final String blogId = postFromDb.getJsonObject("blog", new JsonObject()).getString("$id");
+				updatePostCounters(blogId, previousState, state);
+				reindex(postId, false);
+				plugin.setIngestJobStateAndVersion(post, IngestJobState.TO_BE_SENT, version);
+				plugin.notifyUpsert(blogId, user, post.put("_id", postId)).onComplete(e->{
+					if(e.failed()){
+						log.error("Failed to notify upsert post: ", e.cause());
+					} else {
+						acknowledgeOutbox(postId, version);
+					}
+					result.handle(new Either.Right<String, JsonObject>(new JsonObject().put("state", state)));
+				});
+			});
+		});
 	}
 
 	@Override
 	public void delete(UserInfos user, String blogId, String postId, final Handler<Either<String, JsonObject>> result) {
+		final long version = System.currentTimeMillis();
 		QueryBuilder query = QueryBuilder.start("_id").is(postId);
-		// TODO JBER not handled
-		mongo.delete(POST_COLLECTION, MongoQueryBuilder.build(query), event -> {
-			//must set id before notify
-			plugin.notifyUpsert(blogId, user, new JsonObject().put("_id", postId).put("version", new Date().getTime())).onComplete(e -> {
-				if (e.failed()) {
-					log.error("Failed to notify upsert post: ", e.cause());
+		final JsonObject fields = new JsonObject().put("state", 1);
+		appendDeletion(postId, blogId, user, version).onComplete(appended -> {
+			mongo.findAndModify(POST_COLLECTION, MongoQueryBuilder.build(query), null, null, fields, true, false, false, event -> {
+				final JsonObject removed = event.body().getJsonObject("result");
+				if (isOk(event.body()) && removed != null) {
+					updatePostCounters(blogId, removed.getString("state"), null);
+					reindex(postId, true);
+				} else {
+					// the delete did not happen, the outbox must not replay it
+					acknowledgeDeletion(postId, version);
 				}
-				result.handle(Utils.validResult(event));
+				//must set id before notify
+				plugin.notifyUpsert(blogId, user, new JsonObject().put("_id", postId).put("version", version)).onComplete(e -> {
+					if (e.failed()) {
+						log.error("Failed to notify upsert post: ", e.cause());
+					} else {
+						acknowledgeDeletion(postId, version);
+					}
+					result.handle(isOk(event.body()) ?
+							new Either.Right<>(new JsonObject().put("number", removed != null ? 1 : 0)) :
+							new Either.Left<>(toErrorStr(event.body())));
+				});
 			});
 		});
 	}
 
+	/**
+	 * Sets the outbox marker on the post to write, when the service has an outbox.
+	 */
+	private void markPending(JsonObject post, UserInfos user, long version) {
+		if (outbox != null) {
+			post.put(IngestOutbox.FIELD, outbox.marker(user, version));
+		}
+	}
+
+	/**
+	 * Records the deletion of the post in the outbox, before the delete itself. A failure is only logged: the delete
+	 * goes on, notified as before by the service.
+	 */
+	private Future<Void> appendDeletion(String postId, String blogId, UserInfos user, long version) {
+		if (outbox == null) {
+			return Future.succeededFuture();
+		}
+		final Promise<Void> promise = Promise.promise();
+		outbox.appendDeletion(IngestOutbox.POST, postId, blogId, user, version).onComplete(ar -> {
+			if (ar.failed()) {
+				log.error("Failed to record the deletion of post " + postId + " in the outbox: ", ar.cause());
+			}
+			promise.complete();
+		});
+		return promise.future();
+	}
+
+	private void acknowledgeDeletion(String postId, long version) {
+		if (outbox != null) {
+			outbox.acknowledgeDeletion(IngestOutbox.POST, postId, version);
+		}
+	}
+
+	private void acknowledgeOutbox(String postId, long version) {
+		if (outbox != null) {
+			outbox.acknowledge(IngestOutbox.POST, postId, version);
+		}
+	}
+
 	@Override
 	public void get(String blogId, final String postId, StateType state,
 				final Handler<Either<String, JsonObject>> result) {
@@ -216,7 +322,9 @@ public class DefaultPostService implements PostService {
 			@Override
 			public void handle(Message<JsonObject> event) {
 				Either<String, JsonObject> res = Utils.validResult(event);
-				if (res.isRight() && res.right().getValue().size() > 0) {
+				if (res.isRight() && res.right().getValue().size() > 0 && viewCounter != null) {
+					viewCounter.increment(postId);
+				} else if (res.isRight() && res.right().getValue().size() > 0) {
 					QueryBuilder query2 = QueryBuilder.start("_id").is(postId)
 							.put("state").is(StateType.PUBLISHED.name());
 					MongoUpdateBuilder incView = new MongoUpdateBuilder();
@@ -229,7 +337,27 @@ public class DefaultPostService implements PostService {
 	}
 
 	@Override
-	public void list(String blogId, final UserInfos user, final Integer page, final int limit, final String search, final Set<String> states,final boolean withContent, final Handler<Either<String, JsonArray>> result) {
+	public void list(String blogId, final UserInfos user, final BlogRights rights, final Integer page, final int limit, final String search, final Set<String> states,final boolean withContent, final Handler<Either<String, JsonArray>> result) {
+		listVisible(blogId, user, rights, page, null, limit, search, states, withContent, false, result);
+	}
+
+	@Override
+	public void listAfter(String blogId, final UserInfos user, final BlogRights rights, final PostCursor after, final int limit, final String search, final Set<String> states, final Handler<Either<String, JsonArray>> result) {
+		listVisible(blogId, user, rights, null, after, limit, search, states, false, false, result);
+	}
+
+	@Override
+	public void listWithComments(String blogId, final UserInfos user, final BlogRights rights, final Integer page, final int limit, final String search, final Set<String> states,final boolean withContent, final Handler<Either<String, JsonArray>> result) {
+		listVisible(blogId, user, rights, page, null, limit, search, states, withContent, true, result);
+	}
+
+	@Override
+	public void listWithCommentsAfter(String blogId, final UserInfos user, final BlogRights rights, final PostCursor after, final int limit, final String search, final Set<String> states, final Handler<Either<String, JsonArray>> result) {
+		listVisible(blogId, user, rights, null, after, limit, search, states, true, true, result);
+	}
+
+	private void listVisible(String blogId, final UserInfos user, final BlogRights rights, final Integer page, final PostCursor after, final int limit, final String search,
+							 final Set<String> states, final boolean withContent, final boolean withComments, final Handler<Either<String, JsonArray>> result) {
 		final QueryBuilder accessQuery;
 		if (states == null || states.isEmpty()) {
 			accessQuery = QueryBuilder.start("blog.$id").is(blogId);
@@ -237,98 +365,52 @@ public class DefaultPostService implements PostService {
 			accessQuery = QueryBuilder.start("blog.$id").is(blogId).put("state").in(states);
 		}
 
-		final QueryBuilder isManagerQuery = getDefautQueryBuilderForList(blogId, user,true);
-		final JsonObject sort = new JsonObject().put("sorted", -1);
 		final JsonObject projection = defaultKeys.copy();
 		if(!withContent) {
 			projection.remove("content");
 		}
-		final Handler<Message<JsonObject>> finalHandler = new Handler<Message<JsonObject>>() {
-			@Override
-			public void handle(Message<JsonObject> event) {
-				result.handle(Utils.validResults(event));
-			}
-		};
+		if (withComments) {
+			projection.put("comments", 1);
+		}
 
-		mongo.count("blogs", MongoQueryBuilder.build(isManagerQuery), new Handler<Message<JsonObject>>() {
-			public void handle(Message<JsonObject> event) {
-				JsonObject res = event.body();
-				if(res == null || !"ok".equals(res.getString("status"))){
-					result.handle(new Either.Left<String, JsonArray>(event.body().encodePrettily()));
-					return;
-				}
-				boolean isManager = 1 == res.getInteger("count", 0);
-
-				accessQuery.or(
-					QueryBuilder.start("state").is(StateType.PUBLISHED.name()).get(),
-					QueryBuilder.start().and(
-						QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-						QueryBuilder.start("state").is(StateType.DRAFT.name()).get()
-					).get(),
-					isManager ?
-						QueryBuilder.start("state").is(StateType.SUBMITTED.name()).get() :
-						QueryBuilder.start().and(
-							QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-							QueryBuilder.start("state").is(StateType.SUBMITTED.name()).get()
-						).get()
-				);
+		hasBlogRight(blogId, user, rights, true, isManager -> {
+			if (isManager.isLeft()) {
+				result.handle(new Either.Left<>(isManager.left().getValue()));
+				return;
+			}
+			accessQuery.or(visibleStates(blogId, user, isManager.right().getValue()));
 
-				final QueryBuilder query = getQueryListBuilder(search, result, accessQuery);
+			final QueryBuilder query = getQueryListBuilder(search, result, accessQuery);
 
-				if (query != null) {
-					if (limit > 0 && page == null) {
-						mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, 0, limit, limit, finalHandler);
-					} else if (page == null) {
-						mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, finalHandler);
-					} else {
-						final int skip = (0 == page) ? -1 : page * limit;
-						mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, skip, limit, limit, finalHandler);
-					}
-				}
+			if (query != null) {
+				findPage(query, projection, page, after, limit, result);
 			}
 		});
 	}
 
 	@Override
-	public void counter(final String blogId, final UserInfos user,
+	public void counter(final String blogId, final UserInfos user, final BlogRights rights,
 	                    final Handler<Either<String, JsonArray>> result) {
 		final QueryBuilder query = QueryBuilder.start("blog.$id").is(blogId);
-		final QueryBuilder isManagerQuery = getDefautQueryBuilderForList(blogId, user,true);
-		final JsonObject projection = new JsonObject();
-		projection.put("state", 1);
-		projection.put("_id", -1);
-
-		final Handler<Message<JsonObject>> finalHandler = new Handler<Message<JsonObject>>() {
-			@Override
-			public void handle(Message<JsonObject> event) {
-				result.handle(Utils.validResults(event));
-			}
-		};
 
-		mongo.count("blogs", MongoQueryBuilder.build(isManagerQuery), new Handler<Message<JsonObject>>() {
-			public void handle(Message<JsonObject> event) {
-				JsonObject res = event.body();
-				if (res == null || !"ok".equals(res.getString("status"))) {
-					result.handle(new Either.Left<String, JsonArray>(event.body().encodePrettily()));
-					return;
-				}
-				boolean isManager = 1 == res.getInteger("count", 0);
-
-				query.or(
-						QueryBuilder.start("state").is(StateType.PUBLISHED.name()).get(),
-						QueryBuilder.start().and(
-								QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-								QueryBuilder.start("state").is(StateType.DRAFT.name()).get()
-						).get(),
-						isManager ?
-								QueryBuilder.start("state").is(StateType.SUBMITTED.name()).get() :
-								QueryBuilder.start().and(
-										QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-										QueryBuilder.start("state").is(StateType.SUBMITTED.name()).get()
-								).get()
-				);
-    			mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), null, projection, finalHandler);
+		hasBlogRight(blogId, user, rights, true, isManager -> {
+			if (isManager.isLeft()) {
+				result.handle(new Either.Left<>(isManager.left().getValue()));
+				return;
 			}
+			query.or(visibleStates(blogId, user, isManager.right().getValue()));
+
+			// at most one row per state: {state, count}
+			final JsonArray pipeline = new JsonArray()
+					.add(new JsonObject().put("$match", MongoQueryBuilder.build(query)))
+					.add(new JsonObject().put("$group", new JsonObject()
+							.put("_id", "$state")
+							.put("count", new JsonObject().put("$sum", 1))))
+					.add(new JsonObject().put("$project", new JsonObject()
+							.put("_id", 0)
+							.put("state", "$_id")
+							.put("count", 1)));
+			aggregate(pipeline, result);
 		});
 	}
 
@@ -348,24 +430,95 @@ public class DefaultPostService implements PostService {
 
 	@Override
 	public void listPublic(String blogId, Integer page, int limit, String search, Handler<Either<String, JsonArray>> result) {
+		listPublic(blogId, page, null, limit, search, result);
+	}
+
+	@Override
+	public void listPublicAfter(String blogId, PostCursor after, int limit, String search, Handler<Either<String, JsonArray>> result) {
+		listPublic(blogId, null, after, limit, search, result);
+	}
+
+	private void listPublic(String blogId, Integer page, PostCursor after, int limit, String search, Handler<Either<String, JsonArray>> result) {
 		final QueryBuilder accessQuery = QueryBuilder.start("blog.$id").is(blogId).put("state").is(StateType.PUBLISHED.name());
 		final QueryBuilder query = getQueryListBuilder(search, result, accessQuery);
-		final JsonObject sort = new JsonObject().put("sorted", -1);
 		final JsonObject projection = defaultKeys.copy();
 		//projection.remove("content");
-		final Handler<Message<JsonObject>> finalHandler =event -> {
-			result.handle(Utils.validResults(event));
-		};
-		if (limit > 0 && page == null) {
-			mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, 0, limit, limit, finalHandler);
-		} else if (page == null) {
-			mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, finalHandler);
-		} else {
-			final int skip = (0 == page) ? -1 : page * limit;
-			mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, skip, limit, limit, finalHandler);
+		if (query != null) {
+			findPage(query, projection, page, after, limit, result);
 		}
 	}
 
+	/**
+	 * One find per blog, run together, each served by idx_post_blog_state_sorted and stopped after {@code limit}
+	 * posts: nothing is read beyond the posts returned, whatever the size of the blogs.
+	 */
+	@Override
+	public void listLatestPublished(final List<String> blogIds, final int limit, final Handler<Either<String, JsonObject>> result) {
+		if (blogIds == null || blogIds.isEmpty()) {
+			result.handle(new Either.Right<>(new JsonObject()));
+			return;
+		}
+		final JsonObject sort = new JsonObject().put("sorted", -1).put("_id", -1);
+		final JsonObject projection = defaultKeys.copy();
+		projection.remove("content");
+		final Map<String, Future<JsonArray>> postsByBlogId = new LinkedHashMap<>();
+		for (String blogId : blogIds) {
+			if (postsByBlogId.containsKey(blogId)) continue;
+			final Promise<JsonArray> promise = Promise.promise();
+			final JsonObject query = new JsonObject().put("blog.$id", blogId).put("state", StateType.PUBLISHED.name());
+			mongo.find(POST_COLLECTION, query, sort, projection, 0, limit, limit, event -> {
+				final Either<String, JsonArray> posts = Utils.validResults(event);
+				if (posts.isLeft()) {
+					promise.fail(posts.left().getValue());
+				} else {
+					promise.complete(posts.right().getValue());
+				}
+			});
+			postsByBlogId.put(blogId, promise.future());
+		}
+		CompositeFuture.all(new ArrayList<>(postsByBlogId.values())).onComplete(ar -> {
+			if (ar.failed()) {
+				result.handle(new Either.Left<>(ar.cause().getMessage()));
+				return;
+			}
+			// blogs without published post are left out, most recent first
+			final JsonObject postsByBlog = new JsonObject();
+			for (Map.Entry<String, Future<JsonArray>> e : postsByBlogId.entrySet()) {
+				final JsonArray blogPosts = new JsonArray();
+				for (Object o : e.getValue().result()) {
+					if (o instanceof JsonObject) {
+						blogPosts.add(((JsonObject) o).put("blogId", e.getKey()));
+					}
+				}
+				if (!blogPosts.isEmpty()) {
+					postsByBlog.put(e.getKey(), blogPosts);
+				}
+			}
+			result.handle(new Either.Right<>(postsByBlog));
+		});
+	}
+
+	/**
+	 * The {@code limit} is global to {@code blogIds}, not per blog: the most recently sorted posts are returned
+	 * whatever their blog, so that a blog with many recent posts can leave the others without any.
+	 */
+	@Override
+	public void listLinkable(final List<String> blogIds, final String titlePrefix, final int limit, final Handler<Either<String, JsonArray>> result) {
+		if (blogIds == null || blogIds.isEmpty()) {
+			result.handle(new Either.Right<>(new JsonArray()));
+			return;
+		}
+		final QueryBuilder query = QueryBuilder.start("blog.$id").in(blogIds).put("state").is(StateType.PUBLISHED.name());
+		if (!StringUtils.isEmpty(titlePrefix)) {
+			// case and accent insensitive through the normalized title, an anchored regex without flags can use its index
+			query.put(Field.TITLE_NORMALIZED).regex(Pattern.compile("^" + Pattern.quote(SearchWordTokenizer.normalize(titlePrefix.trim()))));
+		}
+		final JsonObject sort = new JsonObject().put("sorted", -1);
+		final JsonObject projection = new JsonObject().put("_id", 1).put("title", 1).put("blog", 1);
+		mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, 0, limit, limit,
+				event -> result.handle(Utils.validResults(event)));
+	}
+
 	@Override
 	public void listOnePublic(String blogId, String postId, Handler<Either<String, JsonArray>> result) {
 		final QueryBuilder query = QueryBuilder.start("blog.$id").is(blogId).put("state").is(StateType.PUBLISHED.name()).put("_id").is(postId);
@@ -378,120 +531,60 @@ public class DefaultPostService implements PostService {
 	}
 
 	@Override
-	public void list(String blogId, final StateType state, final UserInfos user, final Integer page, final int limit, final String search,
+	public void list(String blogId, final StateType state, final UserInfos user, final BlogRights rights, final Integer page, final int limit, final String search,
 				final Handler<Either<String, JsonArray>> result) {
+		listByState(blogId, state, user, rights, page, null, limit, search, result);
+	}
+
+	@Override
+	public void listAfter(String blogId, final StateType state, final UserInfos user, final BlogRights rights, final PostCursor after, final int limit, final String search,
+				final Handler<Either<String, JsonArray>> result) {
+		listByState(blogId, state, user, rights, null, after, limit, search, result);
+	}
+
+	private void listByState(String blogId, final StateType state, final UserInfos user, final BlogRights rights, final Integer page, final PostCursor after,
+				final int limit, final String search, final Handler<Either<String, JsonArray>> result) {
 		final QueryBuilder accessQuery = QueryBuilder.start("blog.$id").is(blogId).put("state").is(state.name());
-		final JsonObject sort = new JsonObject().put("sorted", -1);
 		final JsonObject projection = defaultKeys.copy();
 		projection.remove("content");
 
-		final Handler<Message<JsonObject>> finalHandler = new Handler<Message<JsonObject>>() {
-			@Override
-			public void handle(Message<JsonObject> event) {
-				result.handle(Utils.validResults(event));
-			}
-		};
-
 		final QueryBuilder query = getQueryListBuilder(search, result, accessQuery);
 
 		if (query != null) {
 
 			if (StateType.PUBLISHED.equals(state)) {
-				if (limit > 0 && page == null) {
-					mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, 0, limit, limit, finalHandler);
-				} else if (page == null) {
-					mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, finalHandler);
-				} else {
-					final int skip = (0 == page) ? -1 : page * limit;
-					mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, skip, limit, limit, finalHandler);
-				}
+				findPage(query, projection, page, after, limit, result);
 			} else {
-				QueryBuilder query2 = getDefautQueryBuilderForList(blogId, user,true);
-				mongo.count("blogs", MongoQueryBuilder.build(query2), new Handler<Message<JsonObject>>() {
-					@Override
-					public void handle(Message<JsonObject> event) {
-						JsonObject res = event.body();
-
-						if ((res != null && "ok".equals(res.getString("status")) &&
-								1 != res.getInteger("count")) || StateType.DRAFT.equals(state)) {
-							accessQuery.put("author.userId").is(user.getUserId());
-						}
-
-						final QueryBuilder listQuery = getQueryListBuilder(search, result, accessQuery);
-						if (limit > 0 && page == null) {
-							mongo.find(POST_COLLECTION, MongoQueryBuilder.build(listQuery), sort, projection, 0, limit, limit, finalHandler);
-						} else if (page == null) {
-							mongo.find(POST_COLLECTION, MongoQueryBuilder.build(listQuery), sort, projection, finalHandler);
-						} else {
-							final int skip = (0 == page) ? -1 : page * limit;
-							mongo.find(POST_COLLECTION, MongoQueryBuilder.build(listQuery), sort, projection, skip, limit, limit, finalHandler);
-						}
+				hasBlogRight(blogId, user, rights, true, isManager -> {
+					if (isManager.isLeft() || !isManager.right().getValue() || StateType.DRAFT.equals(state)) {
+						accessQuery.put("author.userId").is(user.getUserId());
 					}
+
+					final QueryBuilder listQuery = getQueryListBuilder(search, result, accessQuery);
+					findPage(listQuery, projection, page, after, limit, result);
 				});
 			}
 		}
 	}
 
-	@Override
-	public void listWithComments(String blogId, final UserInfos user, final Integer page, final int limit, final String search, final Set<String> states,final boolean withContent, final Handler<Either<String, JsonArray>> result) {
-		final QueryBuilder accessQuery;
-		if (states == null || states.isEmpty()) {
-			accessQuery = QueryBuilder.start("blog.$id").is(blogId);
-		} else {
-			accessQuery = QueryBuilder.start("blog.$id").is(blogId).put("state").in(states);
-		}
-
-		final QueryBuilder isManagerQuery = getDefautQueryBuilderForList(blogId, user,true);
+	/**
+	 * Runs a listing sorted by {@code sorted}, either by keyset when {@code after} is given or by page number.
+	 */
+	private void findPage(final QueryBuilder query, final JsonObject projection, final Integer page, final PostCursor after,
+						  final int limit, final Handler<Either<String, JsonArray>> result) {
 		final JsonObject sort = new JsonObject().put("sorted", -1);
-		final JsonObject projection = defaultKeys.copy();
-		if(!withContent) {
-			projection.remove("content");
+		final Handler<Message<JsonObject>> finalHandler = event -> result.handle(Utils.validResults(event));
+		if (after != null) {
+			final JsonObject keys = projection.copy().put(PostCursor.SORTED, 1);
+			mongo.find(POST_COLLECTION, after.restrict(MongoQueryBuilder.build(query)), PostCursor.SORT, keys, 0, limit, limit, finalHandler);
+		} else if (limit > 0 && page == null) {
+			mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, 0, limit, limit, finalHandler);
+		} else if (page == null) {
+			mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, finalHandler);
+		} else {
+			final int skip = (0 == page) ? -1 : page * limit;
+			mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, skip, limit, limit, finalHandler);
 		}
-		projection.put("comments", 1);
-		final Handler<Message<JsonObject>> finalHandler = new Handler<Message<JsonObject>>() {
-			@Override
-			public void handle(Message<JsonObject> event) {
-				result.handle(Utils.validResults(event));
-			}
-		};
-
-		mongo.count("blogs", MongoQueryBuilder.build(isManagerQuery), new Handler<Message<JsonObject>>() {
-			public void handle(Message<JsonObject> event) {
-				JsonObject res = event.body();
-				if(res == null || !"ok".equals(res.getString("status"))){
-					result.handle(new Either.Left<String, JsonArray>(event.body().encodePrettily()));
-					return;
-				}
-				boolean isManager = 1 == res.getInteger("count", 0);
-
-				accessQuery.or(
-						QueryBuilder.start("state").is(StateType.PUBLISHED.name()).get(),
-						QueryBuilder.start().and(
-								QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-								QueryBuilder.start("state").is(StateType.DRAFT.name()).get()
-						).get(),
-						isManager ?
-								QueryBuilder.start("state").is(StateType.SUBMITTED.name()).get() :
-								QueryBuilder.start().and(
-										QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-										QueryBuilder.start("state").is(StateType.SUBMITTED.name()).get()
-								).get()
-				);
-
-				final QueryBuilder query = getQueryListBuilder(search, result, accessQuery);
-
-				if (query != null) {
-					if (limit > 0 && page == null) {
-						mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, 0, limit, limit, finalHandler);
-					} else if (page == null) {
-						mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, finalHandler);
-					} else {
-						final int skip = (0 == page) ? -1 : page * limit;
-						mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, skip, limit, limit, finalHandler);
-					}
-				}
-			}
-		});
 	}
 
 	private QueryBuilder getQueryListBuilder(String search, Handler<Either<String, JsonArray>> result, QueryBuilder accessQuery) {
@@ -500,7 +593,7 @@ public class DefaultPostService implements PostService {
 			final List<String> searchWords = DefaultBlogService.checkAndComposeWordFromSearchText(search, this.searchWordMinSize);
 			if (!searchWords.isEmpty()) {
 				final QueryBuilder searchQuery = new QueryBuilder();
-				searchQuery.text(MongoDbSearchService.textSearchedComposition(searchWords));
+				searchQuery.text(MongoDbSearchService.textSearchedComposition(SearchWordTokenizer.normalize(searchWords)));
 				query = new QueryBuilder().and(accessQuery.get(), searchQuery.get());
 			} else {
 				query = null;
@@ -514,10 +607,8 @@ public class DefaultPostService implements PostService {
 	}
 
 	@Override
-	public void listOne(String blogId, String postId, final UserInfos user, final Handler<Either<String, JsonArray>> result) {
+	public void listOne(String blogId, String postId, final UserInfos user, final BlogRights rights, final Handler<Either<String, JsonArray>> result) {
 		final QueryBuilder query = QueryBuilder.start("blog.$id").is(blogId).put("_id").is(postId);
-		final QueryBuilder isManagerQuery = getDefautQueryBuilderForList(blogId, user,true);
-		final JsonObject sort = new JsonObject().put("modified", -1);
 		final JsonObject projection = defaultKeys.copy();
 		projection.remove("content");
 
@@ -528,135 +619,231 @@ public class DefaultPostService implements PostService {
 			}
 		};
 
-		mongo.count("blogs", MongoQueryBuilder.build(isManagerQuery), new Handler<Message<JsonObject>>() {
-			public void handle(Message<JsonObject> event) {
-				JsonObject res = event.body();
-				if(res == null || !"ok".equals(res.getString("status"))){
-					result.handle(new Either.Left<String, JsonArray>(event.body().encodePrettily()));
-					return;
-				}
-				boolean isManager = 1 == res.getInteger("count", 0);
-
-				query.or(
-						QueryBuilder.start("state").is(StateType.PUBLISHED.name()).get(),
-						QueryBuilder.start().and(
-								QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-								QueryBuilder.start("state").is(StateType.DRAFT.name()).get()
-						).get(),
-						isManager ?
-								QueryBuilder.start("state").is(StateType.SUBMITTED.name()).get() :
-								QueryBuilder.start().and(
-										QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-										QueryBuilder.start("state").is(StateType.SUBMITTED.name()).get()
-								).get()
-				);
-				mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), sort, projection, finalHandler);
+		hasBlogRight(blogId, user, rights, true, isManager -> {
+			if (isManager.isLeft()) {
+				result.handle(new Either.Left<>(isManager.left().getValue()));
+				return;
 			}
+			query.or(visibleStates(blogId, user, isManager.right().getValue()));
+			// _id is matched, no sort needed
+			mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), null, projection, finalHandler);
 		});
 	}
 
-	private QueryBuilder getDefautQueryBuilderForList(String blogId, UserInfos user,boolean manager) {
-		List<DBObject> groups = new ArrayList<>();
-		if(manager) {
-			groups.add(QueryBuilder.start("userId").is(user.getUserId())
-					.put(MANAGER_ACTION).is(true).get());
-		}else {
-			groups.add(QueryBuilder.start("userId").is(user.getUserId())
-					.put(this.listPostAction).is(true).get());
+	// blog.$id is repeated in each clause so that every branch is served by an index sorted on "sorted"
+	private static DBObject[] visibleStates(String blogId, UserInfos user, boolean isManager) {
+		return new DBObject[]{
+				QueryBuilder.start("blog.$id").is(blogId).put("state").is(StateType.PUBLISHED.name()).get(),
+				QueryBuilder.start("blog.$id").is(blogId).put("state").is(StateType.DRAFT.name())
+						.put("author.userId").is(user.getUserId()).get(),
+				isManager ?
+						QueryBuilder.start("blog.$id").is(blogId).put("state").is(StateType.SUBMITTED.name()).get() :
+						QueryBuilder.start("blog.$id").is(blogId).put("state").is(StateType.SUBMITTED.name())
+								.put("author.userId").is(user.getUserId()).get()
+		};
+	}
+
+	/**
+	 * Tells whether the user is author of the blog or has the manager (resp. list) right on it, from the rights
+	 * resolved by the resource filter when given, otherwise with a count on the blogs collection.
+	 */
+	private void hasBlogRight(final String blogId, final UserInfos user, final BlogRights rights, final boolean manager,
+							  final Handler<Either<String, Boolean>> handler) {
+		if (rights != null && blogId.equals(rights.getBlogId())) {
+			handler.handle(new Either.Right<>(manager ? rights.isManager() : rights.has(listPostAction)));
+			return;
 		}
-		for (String gpId: user.getGroupsIds()) {
-			if(manager) {
-				groups.add(QueryBuilder.start("groupId").is(gpId)
-						.put(MANAGER_ACTION).is(true).get());
-			}else {
-				groups.add(QueryBuilder.start("groupId").is(gpId)
-						.put(this.listPostAction).is(true).get());
+		mongo.count(BLOG_COLLECTION, MongoQueryBuilder.build(getDefautQueryBuilderForList(blogId, user, manager)), event -> {
+			final JsonObject res = event.body();
+			if (isOk(res)) {
+				handler.handle(new Either.Right<>(1 == res.getInteger("count", 0)));
+			} else {
+				handler.handle(new Either.Left<>(toErrorStr(res)));
 			}
-		}
-		return QueryBuilder.start("_id").is(blogId).or(
-				QueryBuilder.start("author.userId").is(user.getUserId()).get(),
-				QueryBuilder.start("shared").elemMatch(
-				new QueryBuilder().or(groups.toArray(new DBObject[groups.size()])).get()).get()
-		);
+		});
+	}
+
+	private QueryBuilder getDefautQueryBuilderForList(String blogId, UserInfos user,boolean manager) {
+		final String right = manager ? MANAGER_ACTION : this.listPostAction;
+		return QueryBuilder.start("_id").is(blogId)
+				.put(BlogPrincipals.path(right)).in(BlogPrincipals.ids(user.getUserId(), user.getGroupsIds()));
 	}
 
 	@Override
 	public void submit(String blogId, String postId, UserInfos user, final Handler<Either<String, JsonObject>> result) {
-		QueryBuilder query = QueryBuilder.start("_id").is(postId).put("blog.$id").is(blogId)
-				.put("state").is(StateType.DRAFT.name()).put("author.userId").is(user.getUserId());
-		final JsonObject q = MongoQueryBuilder.build(query);
-		JsonObject keys = new JsonObject().put("blog", 1).put("firstPublishDate", 1);
-		JsonArray fetch = new JsonArray().add("blog");
-		mongo.findOne(POST_COLLECTION, q, keys, fetch,
-				new Handler<Message<JsonObject>>() {
-			@Override
-			public void handle(Message<JsonObject> event) {
-				final JsonObject res = event.body().getJsonObject("result", new JsonObject());
-				if ("ok".equals(event.body().getString("status")) && res.size() > 0) {
-					BlogService.PublishType type = Utils.stringToEnum(res
-							.getJsonObject("blog",  new JsonObject()).getString("publish-type"),
-							BlogService.PublishType.RESTRAINT, BlogService.PublishType.class);
-					final StateType state = (BlogService.PublishType.RESTRAINT.equals(type)) ?
-							StateType.SUBMITTED : StateType.PUBLISHED;
-					MongoUpdateBuilder updateQuery = new MongoUpdateBuilder().set("state", state.name());
-
-					// if IMMEDIATE published post, first publishing must define the first published date
-					if (StateType.PUBLISHED.equals(state) && res.getJsonObject("firstPublishDate") == null) {
-						updateQuery = updateQuery.set("firstPublishDate", MongoDb.now()).set("sorted",  MongoDb.now());
-					}
-
-					mongo.update(POST_COLLECTION, q, updateQuery.build(), new Handler<Message<JsonObject>>() {
-						@Override
-						public void handle(Message<JsonObject> res) {
-							res.body().put("state", state.name());
-							result.handle(Utils.validResult(res));
-						}
-					});
-				} else {
-					result.handle(Utils.validResult(event));
-				}
+		publishType(blogId, publishType -> {
+			if (publishType.isLeft()) {
+				result.handle(new Either.Left<>(publishType.left().getValue()));
+				return;
+			}
+			if (publishType.right().getValue() == null) {
+				result.handle(new Either.Right<>(new JsonObject()));
+				return;
 			}
+			final StateType state = (BlogService.PublishType.RESTRAINT.equals(publishType.right().getValue())) ?
+					StateType.SUBMITTED : StateType.PUBLISHED;
+			QueryBuilder query = QueryBuilder.start("_id").is(postId).put("blog.$id").is(blogId)
+					.put("state").is(StateType.DRAFT.name()).put("author.userId").is(user.getUserId());
+			final JsonObject set = new JsonObject().put("state", new JsonObject().put("$literal", state.name()));
+			// if IMMEDIATE published post, first publishing must define the first published date
+			if (StateType.PUBLISHED.equals(state)) {
+				setFirstPublishDate(set);
+			}
+			findAndModify(MongoQueryBuilder.build(query), set, new JsonObject().put("state", 1), event -> {
+				if (event.isLeft()) {
+					result.handle(new Either.Left<>(event.left().getValue()));
+					return;
+				}
+				final boolean submitted = event.right().getValue() != null;
+				if (submitted) {
+					updatePostCounters(blogId, StateType.DRAFT.name(), state.name());
+					reindex(postId, false);
+				}
+				// no state when no draft matched, so that nothing is notified
+				final JsonObject r = new JsonObject().put("number", submitted ? 1 : 0);
+				result.handle(new Either.Right<>(submitted ? r.put("state", state.name()) : r));
+			});
 		});
 	}
 
 	@Override
 	public void publish(final String blogId, final String postId, final Handler<Either<String, JsonObject>> result) {
 		QueryBuilder query = QueryBuilder.start("_id").is(postId).put("blog.$id").is(blogId);
-		MongoUpdateBuilder updateQuery = new MongoUpdateBuilder().set("state", StateType.PUBLISHED.name());
-		mongo.update(POST_COLLECTION, MongoQueryBuilder.build(query), updateQuery.build(),
-				MongoDbResult.validActionResultHandler(new Handler<Either<String,JsonObject>>() {
-			public void handle(Either<String, JsonObject> event) {
-				if(event.isLeft()){
-					result.handle(event);
-					return;
-				}
+		final JsonObject set = setFirstPublishDate(new JsonObject()
+				.put("state", new JsonObject().put("$literal", StateType.PUBLISHED.name())));
+		findAndModify(MongoQueryBuilder.build(query), set, new JsonObject().put("state", 1), event -> {
+			if (event.isLeft()) {
+				result.handle(new Either.Left<>(event.left().getValue()));
+				return;
+			}
+			final JsonObject previous = event.right().getValue();
+			if (previous != null) {
+				updatePostCounters(blogId, previous.getString("state"), StateType.PUBLISHED.name());
+				reindex(postId, false);
+			}
+			result.handle(new Either.Right<>(new JsonObject().put("number", previous != null ? 1 : 0)));
+		});
+	}
 
-				QueryBuilder query = QueryBuilder
-					.start("_id").is(postId)
-					.put("blog.$id").is(blogId)
-					.put("firstPublishDate").exists(false);
+	/**
+	 * Adds to the {@code $set} stage of a pipeline update the first publication date and the matching sort date,
+	 * both left untouched if the post was already published once.
+	 */
+	private static JsonObject setFirstPublishDate(JsonObject set) {
+		final JsonObject now = new JsonObject().put("$literal", MongoDb.now());
+		// expressions of a same stage read the document as it was before the stage
+		set.put("firstPublishDate", new JsonObject().put("$ifNull", new JsonArray().add("$firstPublishDate").add(now)));
+		set.put("sorted", new JsonObject().put("$cond", new JsonArray()
+				.add(new JsonObject().put("$ifNull", new JsonArray().add("$firstPublishDate").add(false)))
+				.add("$sorted")
+				.add(now)));
+		return set;
+	}
 
-				MongoUpdateBuilder updateQuery = new MongoUpdateBuilder().set("firstPublishDate", MongoDb.now()).set("sorted",  MongoDb.now());
+	/**
+	 * Applies a single-stage {@code $set} pipeline to the post matching {@code query} in one atomic findAndModify.
+	 * @return the {@code fields} of the post before the update, or null if no post matched
+	 */
+	private void findAndModify(JsonObject query, JsonObject set, JsonObject fields, Handler<Either<String, JsonObject>> result) {
+		final JsonObject command = new JsonObject()
+				.put("findAndModify", POST_COLLECTION)
+				.put("query", query)
+				.put("update", new JsonArray().add(new JsonObject().put("$set", set)))
+				.put("fields", fields)
+				.put("new", false);
+		mongo.command(command.encode(), event -> {
+			if (isOk(event.body())) {
+				result.handle(new Either.Right<>(event.body().getJsonObject("result", new JsonObject()).getJsonObject("value")));
+			} else {
+				result.handle(new Either.Left<>(toErrorStr(event.body())));
+			}
+		});
+	}
 
-				mongo.update(POST_COLLECTION, MongoQueryBuilder.build(query), updateQuery.build(),
-						MongoDbResult.validActionResultHandler(result));
+	/**
+	 * Publication policy of the blog, from the ACL cache when available instead of a DBRef fetch of the blog.
+	 */
+	private void publishType(String blogId, Handler<Either<String, BlogService.PublishType>> result) {
+		if (aclCache != null) {
+			aclCache.publishType(blogId, result);
+			return;
+		}
+		mongo.findOne(BLOG_COLLECTION, new JsonObject().put("_id", blogId), new JsonObject().put("publish-type", 1), event -> {
+			final JsonObject blog = event.body().getJsonObject("result");
+			if (!isOk(event.body())) {
+				result.handle(new Either.Left<>(toErrorStr(event.body())));
+			} else {
+				result.handle(new Either.Right<>(blog == null ? null : Utils.stringToEnum(blog.getString("publish-type"),
+						BlogService.PublishType.RESTRAINT, BlogService.PublishType.class)));
 			}
-		}));
+		});
 	}
 
 	@Override
 	public void unpublish(String postId, final Handler<Either<String, JsonObject>> result) {
 		QueryBuilder query = QueryBuilder.start("_id").is(postId);
 		MongoUpdateBuilder updateQuery = new MongoUpdateBuilder().set("state", StateType.DRAFT.name());
-		mongo.update(POST_COLLECTION, MongoQueryBuilder.build(query), updateQuery.build(),
+		final JsonObject fields = new JsonObject().put("state", 1).put("blog", 1);
+		mongo.findAndModify(POST_COLLECTION, MongoQueryBuilder.build(query), updateQuery.build(), null, fields,
 				new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> res) {
-				result.handle(Utils.validResult(res));
+				if (!isOk(res.body())) {
+					result.handle(new Either.Left<>(toErrorStr(res.body())));
+					return;
+				}
+				final JsonObject previous = res.body().getJsonObject("result");
+				if (previous != null) {
+					updatePostCounters(previous.getJsonObject("blog", new JsonObject()).getString("$id"),
+							previous.getString("state"), StateType.DRAFT.name());
+					reindex(postId, true);
+				}
+				result.handle(new Either.Right<>(new JsonObject().put("number", previous != null ? 1 : 0)));
 			}
 		});
 	}
 
+	/**
+	 * Sets the plain text of the HTML content and the ids of the documents it references, parsed off the event loop when a content processor is configured.
+	 */
+	private Future<Void> processContent(JsonObject post) {
+		if (!post.containsKey("content")) {
+			return Future.succeededFuture();
+		}
+		final String html = post.getString("content", "");
+		final Future<PostContent> content = contentProcessor != null ?
+				contentProcessor.process(html) : Future.succeededFuture(PostContent.parse(html));
+		return content.map(c -> {
+			post.put("contentPlain", c.getPlainText());
+			post.put(Field.DOCUMENT_IDS, new JsonArray(c.getDocumentIds()));
+			return null;
+		});
+	}
+
+	/**
+	 * Sets the normalized copy of the title matched by the title autocompletion. The text index needs none, it
+	 * already ignores case and accents.
+	 */
+	static void normalizeSearchFields(JsonObject post) {
+		if (post.containsKey(Field.TITLE)) {
+			post.put(Field.TITLE_NORMALIZED, SearchWordTokenizer.normalize(post.getString(Field.TITLE)));
+		}
+	}
+
+	/**
+	 * Propagates a post change to the search index and result cache of every instance, if enabled.
+	 */
+	private void reindex(String postId, boolean removed) {
+		if (searchUpdates == null) {
+			return;
+		}
+		if (removed) {
+			searchUpdates.postRemoved(postId);
+		} else {
+			searchUpdates.postChanged(postId);
+		}
+	}
+
 	@Override
 	public void addComment(String blogId, String postId, final String comment, final UserInfos author,
 			final Handler<Either<String, JsonObject>> result) {
@@ -732,16 +919,13 @@ public class DefaultPostService implements PostService {
 	}
 
 	@Override
-	public void deleteComment(final String blogId, final String commentId, final UserInfos user,
+	public void deleteComment(final String blogId, final String commentId, final UserInfos user, final BlogRights rights,
 			final Handler<Either<String, JsonObject>> result) {
-		QueryBuilder query2 = getDefautQueryBuilderForList(blogId, user,false);
-		mongo.count("blogs", MongoQueryBuilder.build(query2), new Handler<Message<JsonObject>>() {
+		hasBlogRight(blogId, user, rights, false, new Handler<Either<String, Boolean>>() {
 			@Override
-			public void handle(Message<JsonObject> event) {
-				JsonObject res = event.body();
+			public void handle(Either<String, Boolean> hasRight) {
 				QueryBuilder tmp = QueryBuilder.start("id").is(commentId);
-				if (res != null && "ok".equals(res.getString("status")) &&
-						1 != res.getInteger("count")) {
+				if (hasRight.isLeft() || !hasRight.right().getValue()) {
 					tmp.put("author.userId").is(user.getUserId());
 				}
 				QueryBuilder query = QueryBuilder.start("blog.$id").is(blogId).put("comments").elemMatch(
@@ -819,6 +1003,169 @@ public class DefaultPostService implements PostService {
 		});
 	}
 
+	private void updatePostCounters(final String blogId, final String fromState, final String toState) {
+		if (blogId == null || Objects.equals(fromState, toState)) {
+			return;
+		}
+		final JsonObject inc = new JsonObject();
+		if (fromState != null) {
+			inc.put(COUNTERS_FIELD + "." + fromState, -1);
+		}
+		if (toState != null) {
+			inc.put(COUNTERS_FIELD + "." + toState, 1);
+		}
+		mongo.update(BLOG_COLLECTION, new JsonObject().put("_id", blogId), new JsonObject().put("$inc", inc), event -> {
+			if (!isOk(event.body())) {
+				log.error("Failed to update post counters of blog " + blogId + ": " + toErrorStr(event.body()));
+			}
+		});
+	}
+
+	@Override
+	public void listReferencingDocuments(String blogId, UserInfos user, BlogRights rights, String afterId, int limit,
+										 Handler<Either<String, JsonArray>> result) {
+		referencingDocuments(blogId, user, rights, query -> {
+			if (query.isLeft()) {
+				result.handle(new Either.Left<>(query.left().getValue()));
+				return;
+			}
+			final QueryBuilder page = query.right().getValue();
+			if (afterId != null) {
+				page.put("_id").greaterThan(afterId);
+			}
+			mongo.find(POST_COLLECTION, MongoQueryBuilder.build(page), new JsonObject().put("_id", 1), new JsonObject().put("_id", 1),
+					-1, limit, limit, event -> result.handle(Utils.validResults(event)));
+		});
+	}
+
+	@Override
+	public void countReferencingDocuments(String blogId, UserInfos user, BlogRights rights, Handler<Either<String, Integer>> result) {
+		referencingDocuments(blogId, user, rights, query -> {
+			if (query.isLeft()) {
+				result.handle(new Either.Left<>(query.left().getValue()));
+				return;
+			}
+			mongo.count(POST_COLLECTION, MongoQueryBuilder.build(query.right().getValue()), event -> {
+				if (isOk(event.body())) {
+					result.handle(new Either.Right<>(event.body().getInteger("count", 0)));
+				} else {
+					result.handle(new Either.Left<>(toErrorStr(event.body())));
+				}
+			});
+		});
+	}
+
+	private void referencingDocuments(String blogId, UserInfos user, BlogRights rights, Handler<Either<String, QueryBuilder>> result) {
+		// any id is greater than "": a range on {blog.$id, _id, documentIds} instead of a scan of the blog's posts
+		final QueryBuilder accessQuery = QueryBuilder.start("blog.$id").is(blogId).put(Field.DOCUMENT_IDS).greaterThan("");
+		hasBlogRight(blogId, user, rights, true, isManager -> {
+			if (isManager.isLeft()) {
+				result.handle(new Either.Left<>(isManager.left().getValue()));
+				return;
+			}
+			accessQuery.or(visibleStates(blogId, user, isManager.right().getValue()));
+			result.handle(new Either.Right<>(accessQuery));
+		});
+	}
+
+	@Override
+	public void listContents(List<String> postIds, Handler<Either<String, JsonArray>> result) {
+		final QueryBuilder query = QueryBuilder.start("_id").in(postIds);
+		final JsonObject projection = new JsonObject().put("_id", 1).put("blog", 1).put("content", 1);
+		mongo.find(POST_COLLECTION, MongoQueryBuilder.build(query), null, projection,
+				event -> result.handle(Utils.validResults(event)));
+	}
+
+	@Override
+	public void repairCounters(final Handler<Either<String, JsonObject>> result) {
+		final JsonArray pipeline = new JsonArray()
+				.add(new JsonObject().put("$group", new JsonObject()
+						.put("_id", new JsonObject().put("blog", blogIdExpression()).put("state", "$state"))
+						.put("count", new JsonObject().put("$sum", 1))));
+		aggregate(pipeline, event -> {
+			if (event.isLeft()) {
+				result.handle(new Either.Left<>(event.left().getValue()));
+				return;
+			}
+			final Map<String, JsonObject> countersByBlog = new HashMap<>();
+			for (Object o : event.right().getValue()) {
+				if (!(o instanceof JsonObject)) continue;
+				final JsonObject key = ((JsonObject) o).getJsonObject("_id", new JsonObject());
+				final String blogId = key.getString("blog");
+				final String state = key.getString("state");
+				if (blogId == null || state == null) continue;
+				countersByBlog.computeIfAbsent(blogId, k -> emptyCounters()).put(state, ((JsonObject) o).getInteger("count", 0));
+			}
+			final JsonArray operations = new JsonArray();
+			for (Map.Entry<String, JsonObject> e : countersByBlog.entrySet()) {
+				operations.add(new JsonObject().put("operation", "update")
+						.put("document", new MongoUpdateBuilder().set(COUNTERS_FIELD, e.getValue()).build())
+						.put("criteria", new JsonObject().put("_id", e.getKey())));
+			}
+			// blogs without any post
+			final JsonObject emptyBlogs = MongoQueryBuilder.build(QueryBuilder.start("_id").notIn(countersByBlog.keySet()));
+			mongo.update(BLOG_COLLECTION, emptyBlogs, new MongoUpdateBuilder().set(COUNTERS_FIELD, emptyCounters()).build(), false, true, empty -> {
+				if (operations.isEmpty()) {
+					result.handle(Utils.validResult(empty));
+					return;
+				}
+				mongo.bulk(BLOG_COLLECTION, operations, bulk -> result.handle(Utils.validResult(bulk)));
+			});
+		});
+	}
+
+	private static JsonObject emptyCounters() {
+		final JsonObject counters = new JsonObject();
+		for (StateType state : StateType.values()) {
+			counters.put(state.name(), 0);
+		}
+		return counters;
+	}
+
+	/**
+	 * Runs the pipeline on the posts and returns all its rows, reading the following batches of the cursor.
+	 */
+	private void aggregate(final JsonArray pipeline, final Handler<Either<String, JsonArray>> result) {
+		final JsonObject command = new JsonObject()
+				.put("aggregate", POST_COLLECTION)
+				.put("allowDiskUse", true)
+				.put("cursor", new JsonObject().put("batchSize", AGGREGATE_BATCH_SIZE))
+				.put("pipeline", pipeline);
+		mongo.command(command.encode(), event -> readCursor(event.body(), "firstBatch", new JsonArray(), result));
+	}
+
+	private void readCursor(final JsonObject body, final String batchField, final JsonArray rows,
+							final Handler<Either<String, JsonArray>> result) {
+		if (!isOk(body)) {
+			result.handle(new Either.Left<>(toErrorStr(body)));
+			return;
+		}
+		final JsonObject cursor = body.getJsonObject("result", new JsonObject()).getJsonObject("cursor", new JsonObject());
+		rows.addAll(cursor.getJsonArray(batchField, new JsonArray()));
+		final Object id = cursor.getValue("id");
+		final long cursorId = id instanceof Number ? ((Number) id).longValue() :
+				id instanceof JsonObject ? Long.parseLong(((JsonObject) id).getString("$numberLong", "0")) : 0L;
+		if (cursorId == 0L) {
+			result.handle(new Either.Right<>(rows));
+			return;
+		}
+		final JsonObject getMore = new JsonObject()
+				.put("getMore", cursorId)
+				.put("collection", POST_COLLECTION)
+				.put("batchSize", AGGREGATE_BATCH_SIZE);
+		mongo.command(getMore.encode(), event -> readCursor(event.body(), "nextBatch", rows, result));
+	}
+
+	// "$blog.$id" is not a valid field path in aggregation expressions, the DBRef id is read through $objectToArray
+	private static JsonObject blogIdExpression() {
+		final JsonObject idEntries = new JsonObject().put("$filter", new JsonObject()
+				.put("input", new JsonObject().put("$objectToArray", "$blog"))
+				.put("cond", new JsonObject().put("$eq", new JsonArray().add("$$this.k").add(new JsonObject().put("$literal", "$id")))));
+		return new JsonObject().put("$arrayElemAt", new JsonArray()
+				.add(new JsonObject().put("$map", new JsonObject().put("input", idEntries).put("in", "$$this.v")))
+				.add(0));
+	}
+
 	private boolean validationError(Handler<Either<String, JsonObject>> result, JsonObject b) {
 		if (b == null) {
 			result.handle(new Either.Left<String, JsonObject>("Validation error : invalids fields."));
@@ -836,12 +1183,16 @@ public class DefaultPostService implements PostService {
 	}
 
 	public void updateAllContents(UserInfos user, List<JsonObject> posts, Handler<Either<String, JsonArray>> handler){
+		final long version = System.currentTimeMillis();
 		JsonArray operations = new JsonArray();
 		posts.stream().map(o -> (JsonObject) o).forEach(row -> {
-			JsonObject set = new MongoUpdateBuilder()//
-					.set("content", row.getString("content")).build();
+			final MongoUpdateBuilder modifier = new MongoUpdateBuilder()//
+					.set("content", row.getString("content"));
+			if (outbox != null) {
+				modifier.set(IngestOutbox.FIELD, outbox.marker(user, version));
+			}
 			JsonObject op = new JsonObject().put("operation", "update")//
-					.put("document", set)//
+					.put("document", modifier.build())//
 					.put("criteria", new JsonObject().put("_id", row.getString("_id")));
 			operations.add(op);
 		});
@@ -856,13 +1207,18 @@ public class DefaultPostService implements PostService {
 					for (final JsonObject post : posts) {
 						final JsonObject blogRef = post.getJsonObject("blog");
 						final String blogId = blogRef.getString("$id");
-						post.put("version", new Date().getTime());
+						post.put("version", version);
 						all.put(blogId, post);
 					}
 					plugin.notifyUpsert(user, all).onComplete(eNotif -> {
 						handler.handle(e);
 						if (eNotif.failed()) {
 							log.error("Failed to notify bulk upsert: ", eNotif.cause());
+						} else {
+							// only the posts actually notified, one per blog, the others are left to the outbox
+							for (final JsonObject post : all.values()) {
+								acknowledgeOutbox(post.getString("_id"), version);
+							}
 						}
 					});
 				}catch(Exception ee){
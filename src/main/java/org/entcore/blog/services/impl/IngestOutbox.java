@@ -0,0 +1,477 @@
+package org.entcore.blog.services.impl;
+
+import fr.wseduc.mongodb.MongoDb;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.blog.explorer.BlogExplorerPlugin;
+import org.entcore.blog.explorer.PostExplorerPlugin;
+import org.entcore.common.explorer.IdAndVersion;
+import org.entcore.common.user.UserInfos;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durable outbox of the notifications of the explorer. A write of a post or a blog sets a {@link #FIELD} marker,
+ * built by {@link #marker}, on the document in the same update, and the service removes it once it notified the
+ * explorer. A deletion, whose document disappears, is recorded in {@link #COLLECTION} before the delete and dropped
+ * once notified or if the delete did not happen.
+ * <p>
+ * Markers and deletions left behind (failed notification, crash) for {@code ingest-outbox-delay} ms are dispatched
+ * every {@code ingest-outbox-interval} ms, by batches of {@code ingest-outbox-batch-size}, from the current
+ * document. Failures are retried with an exponential backoff from {@code ingest-outbox-retry-base} ms up to
+ * {@code ingest-outbox-retry-max} ms; after {@code ingest-outbox-max-attempts} attempts the entry is kept as a dead
+ * letter in {@link #COLLECTION} and no longer retried. Notifying the same version twice is harmless, the explorer
+ * keeps the highest version, so instances of the cluster may dispatch concurrently. Backlog size, dead letters and
+ * lag are returned to requests on {@link #METRICS_ADDRESS}.
+ */
+public class IngestOutbox {
+    public static final String COLLECTION = "blogsIngestOutbox";
+    public static final String METRICS_ADDRESS = "blog.ingest.outbox.metrics";
+    public static final String FIELD = "ingestPending";
+    public static final String POST = "post";
+    public static final String BLOG = "blog";
+    private static final Logger log = LoggerFactory.getLogger(IngestOutbox.class);
+    private static final String NEXT_ATTEMPT = "nextAttempt";
+    private static final String CREATED = "created";
+    private final Vertx vertx;
+    private final MongoDb mongo;
+    private final BlogExplorerPlugin blogPlugin;
+    private final PostExplorerPlugin postPlugin;
+    private final long interval;
+    private final long delay;
+    private final int batchSize;
+    private final long retryBase;
+    private final long retryMax;
+    private final int maxAttempts;
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private boolean dispatching = false;
+    private long timerId = -1;
+    private MessageConsumer<JsonObject> metricsConsumer;
+
+    public IngestOutbox(Vertx vertx, MongoDb mongo, BlogExplorerPlugin blogPlugin, long interval, long delay, int batchSize,
+                        long retryBase, long retryMax, int maxAttempts) {
+        this.vertx = vertx;
+        this.mongo = mongo;
+        this.blogPlugin = blogPlugin;
+        this.postPlugin = blogPlugin.postPlugin();
+        this.interval = interval;
+        this.delay = delay;
+        this.batchSize = batchSize;
+        this.retryBase = retryBase;
+        this.retryMax = retryMax;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public static IngestOutbox create(Vertx vertx, MongoDb mongo, BlogExplorerPlugin blogPlugin, JsonObject config) {
+        return new IngestOutbox(vertx, mongo, blogPlugin, config.getLong("ingest-outbox-interval", 5000L),
+                config.getLong("ingest-outbox-delay", 30000L),
+                config.getInteger("ingest-outbox-batch-size", 100), config.getLong("ingest-outbox-retry-base", 1000L),
+                config.getLong("ingest-outbox-retry-max", 300000L), config.getInteger("ingest-outbox-max-attempts", 10));
+    }
+
+    public void start() {
+        if (timerId == -1 && interval > 0) {
+            timerId = vertx.setPeriodic(interval, id -> dispatch());
+            metricsConsumer = vertx.eventBus().consumer(METRICS_ADDRESS, this::metrics);
+        }
+    }
+
+    public void stop() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            metricsConsumer.unregister();
+            timerId = -1;
+            metricsConsumer = null;
+        }
+    }
+
+    /**
+     * @return the marker to set under {@link #FIELD} in the update writing the document at {@code version}
+     * @param user user notified as the author of the change
+     */
+    public JsonObject marker(UserInfos user, long version) {
+        final long now = System.currentTimeMillis();
+        return new JsonObject()
+                .put("version", version)
+                .put("user", user(user))
+                .put("attempts", 0)
+                // dispatching before the service notified would only duplicate its notification
+                .put(NEXT_ATTEMPT, now + delay)
+                .put(CREATED, now);
+    }
+
+    /**
+     * Removes the marker of {@code type} {@code id} if no write newer than {@code version} set it since.
+     */
+    public void acknowledge(String type, String id, long version) {
+        final JsonObject query = new JsonObject().put("_id", id).put(FIELD + ".version", new JsonObject().put("$lte", version));
+        mongo.update(collection(type), query, new JsonObject().put("$unset", new JsonObject().put(FIELD, "")), event -> {
+            if (!"ok".equals(event.body().getString("status"))) {
+                log.error(String.format("[Blog@%s::acknowledge] Failed to acknowledge %s %s: %s",
+                        this.getClass().getSimpleName(), type, id, event.body().getString("message", "")));
+            }
+        });
+    }
+
+    /**
+     * Records the deletion of {@code type} {@code id} at {@code version}; to be done before the delete itself.
+     * @param blogId blog of the post, or the blog itself
+     * @param user user notified as the author of the change
+     */
+    public Future<Void> appendDeletion(String type, String id, String blogId, UserInfos user, long version) {
+        final long now = System.currentTimeMillis();
+        final JsonObject update = new JsonObject()
+                .put("$max", new JsonObject().put("version", version))
+                .put("$set", new JsonObject()
+                        .put("type", type)
+                        .put("resourceId", id)
+                        .put("blogId", blogId)
+                        .put("user", user(user))
+                        .put("attempts", 0)
+                        .put(NEXT_ATTEMPT, now + delay))
+                .put("$unset", new JsonObject().put("dead", "").put("error", ""))
+                .put("$setOnInsert", new JsonObject().put(CREATED, now));
+        final Promise<Void> promise = Promise.promise();
+        mongo.update(COLLECTION, new JsonObject().put("_id", key(type, id)), update, true, false, event -> {
+            if ("ok".equals(event.body().getString("status"))) {
+                promise.complete();
+            } else {
+                promise.fail(event.body().getString("message", ""));
+            }
+        });
+        return promise.future();
+    }
+
+    /**
+     * Drops the deletion of {@code type} {@code id} if none newer than {@code version} was appended since: once
+     * notified, or when the delete failed or matched nothing.
+     */
+    public void acknowledgeDeletion(String type, String id, long version) {
+        final JsonObject query = new JsonObject().put("_id", key(type, id))
+                .put("version", new JsonObject().put("$lte", version));
+        mongo.delete(COLLECTION, query, event -> {
+            if (!"ok".equals(event.body().getString("status"))) {
+                log.error(String.format("[Blog@%s::acknowledgeDeletion] Failed to acknowledge %s %s: %s",
+                        this.getClass().getSimpleName(), type, id, event.body().getString("message", "")));
+            }
+        });
+    }
+
+    private static String key(String type, String id) {
+        return type + ":" + id;
+    }
+
+    private static String collection(String type) {
+        return POST.equals(type) ? DefaultPostService.POST_COLLECTION : DefaultBlogService.BLOG_COLLECTION;
+    }
+
+    private static JsonObject user(UserInfos user) {
+        return new JsonObject()
+                .put("userId", user.getUserId())
+                .put("username", user.getUsername())
+                .put("login", user.getLogin());
+    }
+
+    private static UserInfos user(JsonObject author) {
+        final UserInfos user = new UserInfos();
+        user.setUserId(author.getString("userId"));
+        user.setUsername(author.getString("username"));
+        user.setLogin(author.getString("login"));
+        return user;
+    }
+
+    private static JsonObject due() {
+        return new JsonObject().put("$lte", System.currentTimeMillis());
+    }
+
+    private void dispatch() {
+        if (dispatching) {
+            return;
+        }
+        dispatching = true;
+        final Future<Boolean> posts = dispatchPending(POST);
+        final Future<Boolean> blogs = dispatchPending(BLOG);
+        final Future<Boolean> deletions = dispatchDeletions();
+        CompositeFuture.join(posts, blogs, deletions).onComplete(ar -> {
+            dispatching = false;
+            // a full batch means more entries may be due
+            if (Boolean.TRUE.equals(posts.result()) || Boolean.TRUE.equals(blogs.result()) || Boolean.TRUE.equals(deletions.result())) {
+                dispatch();
+            }
+        });
+    }
+
+    /**
+     * Notifies the documents of {@code type} whose marker is due.
+     * @return whether a full batch was read
+     */
+    private Future<Boolean> dispatchPending(String type) {
+        final Promise<Boolean> promise = Promise.promise();
+        final JsonObject query = new JsonObject().put(FIELD + "." + NEXT_ATTEMPT, due());
+        final JsonObject sort = new JsonObject().put(FIELD + "." + NEXT_ATTEMPT, 1);
+        final JsonObject keys = POST.equals(type) ? new JsonObject().put("comments", 0) : null;
+        mongo.find(collection(type), query, sort, keys, -1, batchSize, batchSize, event -> {
+            final JsonArray documents = event.body().getJsonArray("results");
+            if (!"ok".equals(event.body().getString("status")) || documents == null || documents.isEmpty()) {
+                promise.complete(false);
+                return;
+            }
+            final List<Future> notified = new ArrayList<>();
+            for (Object o : documents) {
+                final JsonObject document = (JsonObject) o;
+                final JsonObject marker = (JsonObject) document.remove(FIELD);
+                final String id = document.getString("_id");
+                final long version = marker.getLong("version", 0L);
+                final UserInfos user = user(marker.getJsonObject("user", new JsonObject()));
+                final Future<Void> notification;
+                if (POST.equals(type)) {
+                    final String blogId = document.getJsonObject("blog", new JsonObject()).getString("$id");
+                    notification = postPlugin.notifyUpsert(blogId, user, document.put("version", version));
+                } else {
+                    blogPlugin.setVersion(document, version);
+                    notification = blogPlugin.notifyUpsert(user, document);
+                }
+                notified.add(notification.onComplete(ar -> {
+                    if (ar.succeeded()) {
+                        dispatched.increment();
+                        acknowledge(type, id, version);
+                    } else {
+                        retryPending(type, id, marker, ar.cause().getMessage());
+                    }
+                }));
+            }
+            CompositeFuture.join(notified).onComplete(ar -> promise.complete(documents.size() >= batchSize));
+        });
+        return promise.future();
+    }
+
+    /**
+     * Notifies the deletions that are due, dropping those whose document still exists: their delete did not happen.
+     * @return whether a full batch was read
+     */
+    private Future<Boolean> dispatchDeletions() {
+        final Promise<Boolean> promise = Promise.promise();
+        final JsonObject query = new JsonObject().put(NEXT_ATTEMPT, due());
+        mongo.find(COLLECTION, query, new JsonObject().put(NEXT_ATTEMPT, 1), null, -1, batchSize, batchSize, event -> {
+            final JsonArray entries = event.body().getJsonArray("results");
+            if (!"ok".equals(event.body().getString("status")) || entries == null || entries.isEmpty()) {
+                promise.complete(false);
+                return;
+            }
+            CompositeFuture.join(existing(POST, entries), existing(BLOG, entries)).onComplete(found -> {
+                final List<Future> notified = new ArrayList<>();
+                for (Object o : entries) {
+                    final JsonObject entry = (JsonObject) o;
+                    final String type = entry.getString("type");
+                    final String id = entry.getString("resourceId");
+                    final long version = entry.getLong("version", 0L);
+                    if (found.failed()) {
+                        retryDeletion(entry, found.cause().getMessage());
+                        continue;
+                    }
+                    final Set<String> existing = POST.equals(type) ? found.result().resultAt(0) : found.result().resultAt(1);
+                    if (existing.contains(id)) {
+                        acknowledgeDeletion(type, id, version);
+                        continue;
+                    }
+                    final UserInfos user = user(entry.getJsonObject("user", new JsonObject()));
+                    final Future<Void> notification = POST.equals(type) ?
+                            // as DefaultPostService.delete does, a post without content is notified for a deleted one
+                            postPlugin.notifyUpsert(entry.getString("blogId"), user, new JsonObject().put("_id", id).put("version", version)) :
+                            blogPlugin.notifyDeleteById(user, new IdAndVersion(id, version));
+                    notified.add(notification.onComplete(ar -> {
+                        if (ar.succeeded()) {
+                            dispatched.increment();
+                            acknowledgeDeletion(type, id, version);
+                        } else {
+                            retryDeletion(entry, ar.cause().getMessage());
+                        }
+                    }));
+                }
+                CompositeFuture.join(notified).onComplete(ar -> promise.complete(entries.size() >= batchSize));
+            });
+        });
+        return promise.future();
+    }
+
+    /**
+     * @return the ids of the documents of {@code type} still existing among the deletions {@code entries}
+     */
+    private Future<Set<String>> existing(String type, JsonArray entries) {
+        final JsonArray ids = new JsonArray();
+        for (Object o : entries) {
+            final JsonObject entry = (JsonObject) o;
+            if (type.equals(entry.getString("type"))) {
+                ids.add(entry.getString("resourceId"));
+            }
+        }
+        if (ids.isEmpty()) {
+            return Future.succeededFuture(new HashSet<>());
+        }
+        final Promise<Set<String>> promise = Promise.promise();
+        final JsonObject query = new JsonObject().put("_id", new JsonObject().put("$in", ids));
+        mongo.find(collection(type), query, null, new JsonObject().put("_id", 1), event -> {
+            if (!"ok".equals(event.body().getString("status"))) {
+                promise.fail(event.body().getString("message", ""));
+                return;
+            }
+            final Set<String> existing = new HashSet<>();
+            for (Object o : event.body().getJsonArray("results", new JsonArray())) {
+                existing.add(((JsonObject) o).getString("_id"));
+            }
+            promise.complete(existing);
+        });
+        return promise.future();
+    }
+
+    private long backoff(int attempts) {
+        return Math.min(retryMax, retryBase << Math.min(attempts, 20));
+    }
+
+    /**
+     * Reschedules the marker of {@code type} {@code id}, or moves it to the dead letters once
+     * {@code ingest-outbox-max-attempts} attempts failed.
+     */
+    private void retryPending(String type, String id, JsonObject marker, String error) {
+        failed.increment();
+        log.warn(String.format("[Blog@%s::retryPending] Failed to notify %s %s: %s", this.getClass().getSimpleName(),
+                type, id, error));
+        final int attempts = marker.getInteger("attempts", 0) + 1;
+        final JsonObject query = new JsonObject().put("_id", id).put(FIELD + ".version", marker.getLong("version"));
+        if (attempts < maxAttempts) {
+            final JsonObject update = new JsonObject().put("$set", new JsonObject()
+                    .put(FIELD + ".attempts", attempts)
+                    .put(FIELD + "." + NEXT_ATTEMPT, System.currentTimeMillis() + backoff(attempts - 1)));
+            mongo.update(collection(type), query, update, event -> logFailure("retryPending", type, id, event));
+            return;
+        }
+        final JsonObject deadLetter = new JsonObject()
+                .put("type", type)
+                .put("resourceId", id)
+                .put("version", marker.getLong("version"))
+                .put("user", marker.getJsonObject("user"))
+                .put("attempts", attempts)
+                .put("dead", true)
+                .put("error", error)
+                .put(CREATED, marker.getLong(CREATED));
+        mongo.update(COLLECTION, new JsonObject().put("_id", key(type, id)),
+                new JsonObject().put("$set", deadLetter).put("$unset", new JsonObject().put(NEXT_ATTEMPT, "")), true, false, event -> {
+                    if (logFailure("retryPending", type, id, event)) {
+                        mongo.update(collection(type), query, new JsonObject().put("$unset", new JsonObject().put(FIELD, "")),
+                                unset -> logFailure("retryPending", type, id, unset));
+                    }
+                });
+    }
+
+    /**
+     * Reschedules the deletion {@code entry}, or leaves it as a dead letter once {@code ingest-outbox-max-attempts}
+     * attempts failed.
+     */
+    private void retryDeletion(JsonObject entry, String error) {
+        failed.increment();
+        final String type = entry.getString("type");
+        final String id = entry.getString("resourceId");
+        log.warn(String.format("[Blog@%s::retryDeletion] Failed to notify the deletion of %s %s: %s",
+                this.getClass().getSimpleName(), type, id, error));
+        final int attempts = entry.getInteger("attempts", 0) + 1;
+        final JsonObject query = new JsonObject().put("_id", entry.getString("_id")).put("version", entry.getLong("version"));
+        final JsonObject update = attempts < maxAttempts ?
+                new JsonObject().put("$set", new JsonObject()
+                        .put("attempts", attempts)
+                        .put(NEXT_ATTEMPT, System.currentTimeMillis() + backoff(attempts - 1))) :
+                new JsonObject()
+                        .put("$set", new JsonObject().put("attempts", attempts).put("dead", true).put("error", error))
+                        .put("$unset", new JsonObject().put(NEXT_ATTEMPT, ""));
+        mongo.update(COLLECTION, query, update, event -> logFailure("retryDeletion", type, id, event));
+    }
+
+    private boolean logFailure(String method, String type, String id, Message<JsonObject> event) {
+        if ("ok".equals(event.body().getString("status"))) {
+            return true;
+        }
+        log.error(String.format("[Blog@%s::%s] Failed to reschedule %s %s: %s", this.getClass().getSimpleName(),
+                method, type, id, event.body().getString("message", "")));
+        return false;
+    }
+
+    private void metrics(Message<JsonObject> message) {
+        final String nextAttempt = FIELD + "." + NEXT_ATTEMPT;
+        final String created = FIELD + "." + CREATED;
+        final JsonObject pending = new JsonObject().put(nextAttempt, new JsonObject().put("$exists", true));
+        final JsonObject pendingDeletions = new JsonObject().put(NEXT_ATTEMPT, new JsonObject().put("$exists", true));
+        final List<Future> counts = new ArrayList<>();
+        counts.add(count(DefaultPostService.POST_COLLECTION, pending));
+        counts.add(count(DefaultBlogService.BLOG_COLLECTION, pending));
+        counts.add(count(COLLECTION, pendingDeletions));
+        counts.add(count(COLLECTION, new JsonObject().put("dead", true)));
+        counts.add(oldest(DefaultPostService.POST_COLLECTION, pending, created));
+        counts.add(oldest(DefaultBlogService.BLOG_COLLECTION, pending, created));
+        counts.add(oldest(COLLECTION, pendingDeletions, CREATED));
+        CompositeFuture.join(counts).onComplete(ar -> {
+            if (ar.failed()) {
+                message.fail(500, ar.cause().getMessage());
+                return;
+            }
+            final CompositeFuture r = ar.result();
+            long oldest = Long.MAX_VALUE;
+            for (int i = 4; i < 7; i++) {
+                oldest = Math.min(oldest, r.<Long>resultAt(i));
+            }
+            message.reply(new JsonObject()
+                    .put("backlog", r.<Long>resultAt(0) + r.<Long>resultAt(1) + r.<Long>resultAt(2))
+                    .put("deadLetters", r.<Long>resultAt(3))
+                    .put("lagMillis", oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest)
+                    .put("dispatched", dispatched.sum())
+                    .put("failed", failed.sum()));
+        });
+    }
+
+    private Future<Long> count(String collection, JsonObject query) {
+        final Promise<Long> promise = Promise.promise();
+        mongo.count(collection, query, event -> {
+            if ("ok".equals(event.body().getString("status"))) {
+                promise.complete(event.body().getLong("count", 0L));
+            } else {
+                promise.fail(event.body().getString("message", ""));
+            }
+        });
+        return promise.future();
+    }
+
+    /**
+     * @return the creation date of the oldest entry matching {@code query}, {@link Long#MAX_VALUE} if there is none
+     */
+    private Future<Long> oldest(String collection, JsonObject query, String createdField) {
+        final Promise<Long> promise = Promise.promise();
+        final JsonObject sort = new JsonObject().put(createdField, 1);
+        mongo.find(collection, query, sort, new JsonObject().put(createdField, 1), -1, 1, 1, event -> {
+            if (!"ok".equals(event.body().getString("status"))) {
+                promise.fail(event.body().getString("message", ""));
+                return;
+            }
+            final JsonArray results = event.body().getJsonArray("results", new JsonArray());
+            if (results.isEmpty()) {
+                promise.complete(Long.MAX_VALUE);
+                return;
+            }
+            final JsonObject first = results.getJsonObject(0);
+            final Object value = CREATED.equals(createdField) ? first.getValue(CREATED) :
+                    first.getJsonObject(FIELD, new JsonObject()).getValue(CREATED);
+            promise.complete(value instanceof Number ? ((Number) value).longValue() : Long.MAX_VALUE);
+        });
+        return promise.future();
+    }
+}
@@ -0,0 +1,83 @@
+package org.entcore.blog.services.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of a single pass over the HTML of a post: the plain text (tags removed, as the {@code <[^>]*>} pattern
+ * of StringUtils.stripHtmlTag does) and the ids of the workspace documents referenced by the tags, private or public.
+ * Tags are skipped with indexOf, so that inline base64 images cost a scan and no regex backtracking.
+ */
+public class PostContent {
+    private static final String[] DOCUMENT_PATHS = {"/workspace/document/", "/workspace/pub/document/"};
+    private final String plainText;
+    private final List<String> documentIds;
+
+    private PostContent(String plainText, List<String> documentIds) {
+        this.plainText = plainText;
+        this.documentIds = documentIds;
+    }
+
+    public static PostContent parse(String html) {
+        if (html == null || html.isEmpty()) {
+            return new PostContent("", new ArrayList<>());
+        }
+        final StringBuilder text = new StringBuilder(html.length() / 2);
+        final Set<String> ids = new LinkedHashSet<>();
+        final int length = html.length();
+        int i = 0;
+        while (i < length) {
+            if (html.charAt(i) == '<') {
+                final int end = html.indexOf('>', i + 1);
+                if (end < 0) {
+                    // an unclosed tag is text
+                    text.append(html, i, length);
+                    break;
+                }
+                collectDocumentIds(html, i + 1, end, ids);
+                i = end + 1;
+            } else {
+                int next = html.indexOf('<', i);
+                if (next < 0) {
+                    next = length;
+                }
+                text.append(html, i, next);
+                i = next;
+            }
+        }
+        return new PostContent(text.toString(), new ArrayList<>(ids));
+    }
+
+    private static void collectDocumentIds(String html, int from, int to, Set<String> ids) {
+        for (int i = from; i < to; i++) {
+            if (html.charAt(i) != '/') continue;
+            for (String path : DOCUMENT_PATHS) {
+                if (i + path.length() < to && html.regionMatches(i, path, 0, path.length())) {
+                    int end = i + path.length();
+                    while (end < to && isIdChar(html.charAt(end))) {
+                        end++;
+                    }
+                    if (end > i + path.length()) {
+                        ids.add(html.substring(i + path.length(), end));
+                    }
+                    i = end - 1;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean isIdChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+    }
+
+    public String getPlainText() {
+        return plainText;
+    }
+
+    public List<String> getDocumentIds() {
+        return documentIds;
+    }
+}
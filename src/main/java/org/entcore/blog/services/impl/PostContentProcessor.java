@@ -0,0 +1,115 @@
+package org.entcore.blog.services.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs the processing of post HTML on a dedicated worker pool of {@code content-pool-size} threads instead of the
+ * event loop. Contents shorter than {@code content-inline-max-length} are processed inline, the hop costing more
+ * than the pass. At most {@code content-queue-max} tasks wait for the pool, further tasks fail at once with
+ * {@code content.processing.overloaded}. Queue depth and durations are returned to requests on
+ * {@link #METRICS_ADDRESS}.
+ */
+public class PostContentProcessor {
+    public static final String METRICS_ADDRESS = "blog.content.metrics";
+    public static final String OVERLOADED = "content.processing.overloaded";
+    private final Vertx vertx;
+    private final int poolSize;
+    private final int queueMax;
+    private final int inlineMaxLength;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+    private WorkerExecutor executor;
+    private MessageConsumer<JsonObject> metricsConsumer;
+
+    public PostContentProcessor(Vertx vertx, int poolSize, int queueMax, int inlineMaxLength) {
+        this.vertx = vertx;
+        this.poolSize = poolSize;
+        this.queueMax = queueMax;
+        this.inlineMaxLength = inlineMaxLength;
+    }
+
+    public static PostContentProcessor create(Vertx vertx, JsonObject config) {
+        return new PostContentProcessor(vertx, config.getInteger("content-pool-size", 2),
+                config.getInteger("content-queue-max", 200), config.getInteger("content-inline-max-length", 4096));
+    }
+
+    public void start() {
+        if (executor == null) {
+            executor = vertx.createSharedWorkerExecutor("blog-content", poolSize);
+            metricsConsumer = vertx.eventBus().consumer(METRICS_ADDRESS, message -> message.reply(metrics()));
+        }
+    }
+
+    public void stop() {
+        if (executor != null) {
+            metricsConsumer.unregister();
+            executor.close();
+            metricsConsumer = null;
+            executor = null;
+        }
+    }
+
+    public Future<PostContent> process(String html) {
+        if (html == null || html.length() < inlineMaxLength) {
+            return Future.succeededFuture(PostContent.parse(html));
+        }
+        return submit(() -> PostContent.parse(html));
+    }
+
+    /**
+     * Runs {@code task} on the pool, or fails with {@link #OVERLOADED} if {@code content-queue-max} tasks are waiting.
+     */
+    public <T> Future<T> submit(Supplier<T> task) {
+        if (executor == null) {
+            return Future.succeededFuture(task.get());
+        }
+        if (queued.incrementAndGet() > queueMax) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return Future.failedFuture(OVERLOADED);
+        }
+        final long submittedAt = System.nanoTime();
+        final Promise<T> promise = Promise.promise();
+        executor.<T>executeBlocking(future -> {
+            final long startedAt = System.nanoTime();
+            queued.decrementAndGet();
+            waitNanos.add(startedAt - submittedAt);
+            try {
+                future.complete(task.get());
+            } catch (RuntimeException e) {
+                future.fail(e);
+            } finally {
+                final long run = System.nanoTime() - startedAt;
+                processed.increment();
+                runNanos.add(run);
+                maxRunNanos.accumulateAndGet(run, Math::max);
+            }
+        }, false, promise);
+        return promise.future();
+    }
+
+    public JsonObject metrics() {
+        final long count = processed.sum();
+        return new JsonObject()
+                .put("queued", queued.get())
+                .put("processed", count)
+                .put("rejected", rejected.sum())
+                .put("avgWaitMicros", count == 0 ? 0 : waitNanos.sum() / count / 1000)
+                .put("avgRunMicros", count == 0 ? 0 : runNanos.sum() / count / 1000)
+                .put("maxRunMicros", maxRunNanos.get() / 1000);
+    }
+}
@@ -0,0 +1,108 @@
+package org.entcore.blog.services.impl;
+
+import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.mongodb.MongoUpdateBuilder;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.blog.services.PostService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind counter of post views: reads are accumulated in memory and flushed with a single bulk of $inc,
+ * every {@code flushInterval} ms or as soon as {@code flushThreshold} views are pending. The views of a failed bulk
+ * are pending again, for the next flush.
+ */
+public class PostViewCounter {
+    private static final Logger log = LoggerFactory.getLogger(PostViewCounter.class);
+    private final Vertx vertx;
+    private final MongoDb mongo;
+    private final long flushInterval;
+    private final int flushThreshold;
+    private final Map<String, LongAdder> pending = new ConcurrentHashMap<>();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private long timerId = -1;
+
+    public PostViewCounter(Vertx vertx, MongoDb mongo, long flushInterval, int flushThreshold) {
+        this.vertx = vertx;
+        this.mongo = mongo;
+        this.flushInterval = flushInterval;
+        this.flushThreshold = flushThreshold;
+    }
+
+    public static PostViewCounter create(Vertx vertx, MongoDb mongo, JsonObject config) {
+        return new PostViewCounter(vertx, mongo, config.getLong("post-views-flush-interval", 10000L),
+                config.getInteger("post-views-flush-threshold", 1000));
+    }
+
+    public void start() {
+        if (timerId == -1 && flushInterval > 0) {
+            timerId = vertx.setPeriodic(flushInterval, id -> flush());
+        }
+    }
+
+    public Future<Void> stop() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        return flush();
+    }
+
+    public void increment(String postId) {
+        pending.computeIfAbsent(postId, k -> new LongAdder()).increment();
+        if (pendingCount.incrementAndGet() >= flushThreshold) {
+            flush();
+        }
+    }
+
+    public Future<Void> flush() {
+        final List<String> postIds = new ArrayList<>(pending.keySet());
+        if (postIds.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        final JsonArray operations = new JsonArray();
+        final Map<String, Long> flushed = new HashMap<>();
+        for (String postId : postIds) {
+            final LongAdder views = pending.remove(postId);
+            final long count = views == null ? 0 : views.sum();
+            if (count <= 0) continue;
+            pendingCount.addAndGet(-count);
+            flushed.put(postId, count);
+            final JsonObject criteria = new JsonObject()
+                    .put("_id", postId)
+                    .put("state", PostService.StateType.PUBLISHED.name());
+            operations.add(new JsonObject().put("operation", "update")
+                    .put("document", new MongoUpdateBuilder().inc("views", count).build())
+                    .put("criteria", criteria));
+        }
+        if (operations.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        final Promise<Void> promise = Promise.promise();
+        mongo.bulk(DefaultPostService.POST_COLLECTION, operations, event -> {
+            if ("ok".equals(event.body().getString("status"))) {
+                promise.complete();
+                return;
+            }
+            log.error("Failed to flush post views: " + event.body().getString("message", ""));
+            for (Map.Entry<String, Long> views : flushed.entrySet()) {
+                pending.computeIfAbsent(views.getKey(), k -> new LongAdder()).add(views.getValue());
+                pendingCount.addAndGet(views.getValue());
+            }
+            promise.fail(event.body().getString("message", ""));
+        });
+        return promise.future();
+    }
+}
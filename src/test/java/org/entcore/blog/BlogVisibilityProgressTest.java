@@ -0,0 +1,138 @@
+package org.entcore.blog;
+
+import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.webutils.http.Binding;
+import fr.wseduc.webutils.security.ActionType;
+import fr.wseduc.webutils.security.SecureHttpServerRequest;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.blog.controllers.BlogController;
+import org.entcore.blog.security.BlogAclCache;
+import org.entcore.blog.security.BlogResourcesProvider;
+import org.entcore.blog.services.impl.BlogVisibilitySwitch;
+import org.entcore.common.user.UserInfos;
+import org.entcore.test.TestHelper;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.MongoDBContainer;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that the progress of a visibility switch is served to the managers of the blog only.
+ */
+@RunWith(VertxUnitRunner.class)
+public class BlogVisibilityProgressTest {
+    static final String PROGRESS_RIGHT = "org-entcore-blog-controllers-BlogController|visibilityProgress";
+    static final String MANAGER_RIGHT = "org-entcore-blog-controllers-BlogController|shareResource";
+    static final String READ_RIGHT = "org-entcore-blog-controllers-BlogController|get";
+    static final String BLOG_ID = "progress-blog-0";
+    private static final TestHelper test = TestHelper.helper();
+    @ClassRule
+    public static MongoDBContainer mongoDBContainer = test.database().createMongoContainer().withReuse(true);
+    static final UserInfos owner = test.directory().generateUser("owner");
+    static final UserInfos manager = test.directory().generateUser("manager");
+    static final UserInfos reader = test.directory().generateUser("reader");
+    static BlogResourcesProvider provider;
+    static BlogVisibilitySwitch visibilitySwitch;
+
+    @BeforeClass
+    public static void setUp(TestContext context) {
+        test.database().initMongo(context, mongoDBContainer);
+        final MongoDb mongo = MongoDb.getInstance();
+        for (UserInfos user : new UserInfos[]{owner, manager, reader}) {
+            user.setGroupsIds(new ArrayList<>());
+        }
+        provider = new BlogResourcesProvider(new BlogAclCache(test.vertx(), mongo, 10, 60000L));
+        visibilitySwitch = new BlogVisibilitySwitch(test.vertx(), mongo, null, null, 50, 2, 3, 2000L);
+        final JsonObject blog = new JsonObject()
+                .put("_id", BLOG_ID)
+                .put("title", "progress")
+                .put("author", new JsonObject().put("userId", owner.getUserId()))
+                .put("shared", new JsonArray()
+                        .add(new JsonObject().put("userId", manager.getUserId())
+                                .put(READ_RIGHT, true).put(MANAGER_RIGHT, true).put(PROGRESS_RIGHT, true))
+                        .add(new JsonObject().put("userId", reader.getUserId()).put(READ_RIGHT, true)))
+                .put(BlogVisibilitySwitch.FIELD, new JsonObject()
+                        .put("id", "progress-job-0")
+                        .put("visibility", "PUBLIC")
+                        .put("status", "DONE")
+                        .put("processed", 3)
+                        .put("changed", 2)
+                        .put("total", 3));
+        final Async async = context.async();
+        mongo.save("blogs", blog, event -> {
+            context.assertEquals("ok", event.body().getString("status"));
+            async.complete();
+        });
+    }
+
+    static HttpServerRequest request(String blogId) {
+        final MultiMap params = MultiMap.caseInsensitiveMultiMap().add("blogId", blogId);
+        final HttpServerRequest request = (HttpServerRequest) Proxy.newProxyInstance(
+                HttpServerRequest.class.getClassLoader(), new Class<?>[]{HttpServerRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "params":
+                            return params;
+                        case "pause":
+                        case "resume":
+                            return proxy;
+                        default:
+                            return method.getReturnType() == boolean.class ? false : null;
+                    }
+                });
+        return new SecureHttpServerRequest(request);
+    }
+
+    static Promise<Boolean> authorize(UserInfos user) {
+        final Binding binding = new Binding(HttpMethod.GET, Pattern.compile("/visibility/progress/(?<blogId>[^\\/]+)"),
+                BlogController.class.getName() + "|visibilityProgress", ActionType.RESOURCE);
+        final Promise<Boolean> promise = Promise.promise();
+        provider.authorize(request(BLOG_ID), binding, user, promise::complete);
+        return promise;
+    }
+
+    @Test
+    public void managerShouldGetTheProgress(TestContext context) {
+        final Async async = context.async();
+        authorize(manager).future().onComplete(context.asyncAssertSuccess(authorized -> {
+            context.assertTrue(authorized);
+            visibilitySwitch.progress(BLOG_ID, test.asserts().asyncAssertSuccessEither(context.asyncAssertSuccess(progress -> {
+                context.assertEquals("progress-job-0", progress.getString("id"));
+                context.assertEquals("DONE", progress.getString("status"));
+                context.assertEquals(2, progress.getInteger("changed"));
+                async.complete();
+            })));
+        }));
+    }
+
+    @Test
+    public void ownerShouldGetTheProgress(TestContext context) {
+        final Async async = context.async();
+        authorize(owner).future().onComplete(context.asyncAssertSuccess(authorized -> {
+            context.assertTrue(authorized);
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void readerShouldNotGetTheProgress(TestContext context) {
+        final Async async = context.async();
+        authorize(reader).future().onComplete(context.asyncAssertSuccess(authorized -> {
+            context.assertFalse(authorized);
+            async.complete();
+        }));
+    }
+}
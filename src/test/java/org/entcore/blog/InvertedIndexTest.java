@@ -0,0 +1,69 @@
+package org.entcore.blog;
+
+import org.entcore.blog.search.SearchWordTokenizer;
+import org.entcore.blog.search.index.InvertedIndex;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class InvertedIndexTest {
+
+    static InvertedIndex.Document createDocument(String id, String blogId, long modified) {
+        return new InvertedIndex.Document("post:" + id, blogId, modified, false);
+    }
+
+    static List<String> documentKeys(List<InvertedIndex.Document> docs) {
+        return docs.stream().map(InvertedIndex.Document::getKey).collect(Collectors.toList());
+    }
+
+    @Test
+    public void searchShouldRequireEveryTermAndSortByModified() {
+        final InvertedIndex index = new InvertedIndex();
+        index.upsert(createDocument("1", "b1", 10), SearchWordTokenizer.terms("Sortie au musée"));
+        index.upsert(createDocument("2", "b1", 30), SearchWordTokenizer.terms("Musée du Louvre, sortie scolaire"));
+        index.upsert(createDocument("3", "b2", 20), SearchWordTokenizer.terms("Sortie piscine"));
+        assertEquals(Arrays.asList("post:2", "post:1"), documentKeys(index.search(SearchWordTokenizer.terms("SORTIE musée"), doc -> true)));
+        assertEquals(Arrays.asList("post:3"), documentKeys(index.search(SearchWordTokenizer.terms("sortie"), doc -> "b2".equals(doc.getBlogId()))));
+        assertEquals(0, index.search(SearchWordTokenizer.terms("cantine"), doc -> true).size());
+    }
+
+    @Test
+    public void upsertAndRemoveShouldReplaceTerms() {
+        final InvertedIndex index = new InvertedIndex();
+        index.upsert(createDocument("1", "b1", 10), SearchWordTokenizer.terms("brouillon"));
+        index.upsert(createDocument("1", "b1", 20), SearchWordTokenizer.terms("version finale"));
+        assertEquals(0, index.search(SearchWordTokenizer.terms("brouillon"), doc -> true).size());
+        assertEquals(Arrays.asList("post:1"), documentKeys(index.search(SearchWordTokenizer.terms("finale"), doc -> true)));
+        index.remove("post:1");
+        assertNull(index.get("post:1"));
+        assertEquals(0, index.search(SearchWordTokenizer.terms("finale"), doc -> true).size());
+    }
+
+    @Test
+    public void snapshotShouldRoundTrip() throws Exception {
+        final InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < 2000; i++) {
+            index.upsert(createDocument(String.valueOf(i), "b" + (i % 3), i), SearchWordTokenizer.terms("post " + (i % 2 == 0 ? "pair" : "impair")));
+        }
+        for (int i = 0; i < 1500; i++) {
+            index.remove("post:" + i);
+        }
+        index.compact();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        final InvertedIndex copy = new InvertedIndex();
+        copy.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(500, copy.size());
+        assertEquals(documentKeys(index.search(SearchWordTokenizer.terms("pair"), doc -> true)), documentKeys(copy.search(SearchWordTokenizer.terms("pair"), doc -> true)));
+        assertEquals(250, copy.search(SearchWordTokenizer.terms("post impair"), doc -> true).size());
+    }
+}
@@ -0,0 +1,38 @@
+package org.entcore.blog;
+
+import org.entcore.blog.services.impl.PostContent;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PostContentTest {
+    static final List<String> CONTENTS = Arrays.asList(
+            "",
+            "plain text",
+            "<p>Sortie au <b>musée</b></p><p>2 &lt; 3</p>",
+            "a < b > c",
+            "a <b <c> d",
+            "unclosed <tag",
+            "<img src=\"data:image/png;base64,iVBORw0KGgoAAAANSUhEUg==\"/>after",
+            "<div><span>nested</span> and\n<br/>lines</div>");
+
+    @Test
+    public void plainTextShouldMatchTheTagPattern() {
+        for (String content : CONTENTS) {
+            assertEquals(content, content.replaceAll("<[^>]*>", ""), PostContent.parse(content).getPlainText());
+        }
+    }
+
+    @Test
+    public void documentIdsShouldBeReadFromTags() {
+        final PostContent content = PostContent.parse("<p><img src=\"/workspace/document/abc-123\"/>" +
+                "text /workspace/document/not-a-tag <a href=\"/workspace/pub/document/def_456?thumbnail=120x120\">doc</a>" +
+                "<img src=\"/workspace/document/abc-123\"/></p>");
+        assertEquals(Arrays.asList("abc-123", "def_456"), content.getDocumentIds());
+        assertEquals(Collections.emptyList(), PostContent.parse(null).getDocumentIds());
+    }
+}
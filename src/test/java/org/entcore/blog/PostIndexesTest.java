@@ -0,0 +1,215 @@
+package org.entcore.blog;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.IndexOptions;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.test.TestHelper;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.MongoDBContainer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the listing query shapes of DefaultPostService (list, listPublic, count, counter and listOne) are served
+ * by the posts indexes left by the migrations of deployment/blog/migration, without COLLSCAN nor in-memory SORT.
+ */
+@RunWith(VertxUnitRunner.class)
+public class PostIndexesTest {
+    private static final TestHelper test = TestHelper.helper();
+    @ClassRule
+    public static MongoDBContainer mongoDBContainer = test.database().createMongoContainer().withReuse(true);
+    // dedicated collection so that the indexes and data do not interfere with the other tests
+    static final String COLLECTION = "posts_indexes_test";
+    static final String BLOG_ID = "idx-blog-0";
+    static final String USER_ID = "idx-user-0";
+    static final String[] STATES = {"DRAFT", "SUBMITTED", "PUBLISHED"};
+    static final Path MIGRATIONS = Paths.get("deployment", "blog", "migration");
+    // createIndex(keys[, options]) or dropIndex(name), in their order in the script
+    static final Pattern INDEX_CALL = Pattern.compile("db\\.posts\\.createIndex\\(\\s*(\\{[^}]*\\})\\s*(?:,\\s*(\\{[^}]*\\}))?\\s*\\)"
+            + "|db\\.posts\\.dropIndex\\(\\s*\"([^\"]+)\"\\s*\\)");
+    static final Pattern NAME = Pattern.compile("name\\s*:\\s*\"([^\"]+)\"");
+    static MongoClient mongoClient;
+
+    @BeforeClass
+    public static void setUp(TestContext context) throws IOException {
+        mongoClient = test.database().createMongoClient(mongoDBContainer);
+        final List<JsonObject> indexes = migrationIndexes();
+        context.assertFalse(indexes.isEmpty(), "no posts index found in " + MIGRATIONS.toAbsolutePath());
+        final Async async = context.async();
+        mongoClient.dropCollection(COLLECTION, drop -> {
+            final List<Future> futures = new ArrayList<>();
+            for (JsonObject keys : indexes) {
+                futures.add(createIndex(keys));
+            }
+            for (int b = 0; b < 5; b++) {
+                for (int i = 0; i < 60; i++) {
+                    final JsonObject post = new JsonObject()
+                            .put("_id", "idx-post-" + b + "-" + i)
+                            .put("title", "post " + i)
+                            .put("blog", new JsonObject().put("$ref", "blogs").put("$id", "idx-blog-" + b))
+                            .put("author", new JsonObject().put("userId", "idx-user-" + (i % 4)))
+                            .put("state", STATES[i % 3])
+                            .put("sorted", date(1600000000000L + i * 1000L));
+                    final Promise<String> promise = Promise.promise();
+                    mongoClient.insert(COLLECTION, post, promise);
+                    futures.add(promise.future());
+                }
+            }
+            CompositeFuture.all(futures).onComplete(context.asyncAssertSuccess(r -> async.complete()));
+        });
+    }
+
+    /**
+     * @return the keys of the posts indexes created and not dropped by the migration scripts, in version order,
+     * text indexes aside as no listing goes through them
+     */
+    static List<JsonObject> migrationIndexes() throws IOException {
+        final Map<String, JsonObject> indexes = new LinkedHashMap<>();
+        final List<Path> scripts;
+        try (Stream<Path> files = Files.walk(MIGRATIONS)) {
+            scripts = files.filter(f -> f.toString().endsWith(".js")).sorted().collect(Collectors.toList());
+        }
+        for (Path script : scripts) {
+            final String js = new String(Files.readAllBytes(script), StandardCharsets.UTF_8);
+            final Matcher call = INDEX_CALL.matcher(js);
+            while (call.find()) {
+                if (call.group(3) != null) {
+                    indexes.remove(call.group(3));
+                    continue;
+                }
+                final JsonObject keys = lenientJson(call.group(1));
+                if (keys.getMap().containsValue("text")) continue;
+                final Matcher name = call.group(2) == null ? null : NAME.matcher(call.group(2));
+                indexes.put(name != null && name.find() ? name.group(1) : keys.encode(), keys);
+            }
+        }
+        return new ArrayList<>(indexes.values());
+    }
+
+    /**
+     * Parses a javascript object literal whose keys may be left unquoted.
+     */
+    static JsonObject lenientJson(String literal) {
+        return new JsonObject(literal.replaceAll("([{,]\\s*)([A-Za-z_$][\\w.$]*)\\s*:", "$1\"$2\":"));
+    }
+
+    static Future<Void> createIndex(JsonObject keys) {
+        final Promise<Void> promise = Promise.promise();
+        mongoClient.createIndexWithOptions(COLLECTION, keys, new IndexOptions(), promise);
+        return promise.future();
+    }
+
+    static JsonObject date(long millis) {
+        return new JsonObject().put("$date", Instant.ofEpochMilli(millis).toString());
+    }
+
+    static JsonObject state(String state) {
+        return new JsonObject().put("blog.$id", BLOG_ID).put("state", state);
+    }
+
+    static JsonObject authorState(String state) {
+        return state(state).put("author.userId", USER_ID);
+    }
+
+    static JsonObject visible(boolean isManager) {
+        return new JsonObject().put("blog.$id", BLOG_ID).put("$or", new JsonArray()
+                .add(state("PUBLISHED"))
+                .add(authorState("DRAFT"))
+                .add(isManager ? state("SUBMITTED") : authorState("SUBMITTED")));
+    }
+
+    static JsonObject sorted() {
+        return new JsonObject().put("sorted", -1);
+    }
+
+    static JsonObject find(JsonObject filter, JsonObject sort) {
+        final JsonObject find = new JsonObject().put("find", COLLECTION).put("filter", filter);
+        if (sort != null) {
+            find.put("sort", sort).put("limit", 20);
+        }
+        return find;
+    }
+
+    static JsonObject aggregate(JsonArray pipeline) {
+        return new JsonObject().put("aggregate", COLLECTION).put("pipeline", pipeline).put("cursor", new JsonObject());
+    }
+
+    void assertIndexed(TestContext context, String name, JsonObject command) {
+        final Async async = context.async();
+        final JsonObject explain = new JsonObject().put("explain", command).put("verbosity", "queryPlanner");
+        mongoClient.runCommand("explain", explain, context.asyncAssertSuccess(result -> {
+            final List<String> stages = new ArrayList<>();
+            collectWinningStages(result, false, stages);
+            context.assertFalse(stages.isEmpty(), name + " has no winning plan: " + result.encode());
+            context.assertFalse(stages.contains("COLLSCAN"), name + " scans the collection: " + stages);
+            context.assertFalse(stages.contains("SORT"), name + " sorts in memory: " + stages);
+            async.complete();
+        }));
+    }
+
+    static void collectWinningStages(Object node, boolean inWinningPlan, List<String> stages) {
+        if (node instanceof JsonObject) {
+            final JsonObject json = (JsonObject) node;
+            for (String key : json.fieldNames()) {
+                if ("rejectedPlans".equals(key)) continue;
+                final boolean winning = inWinningPlan || "winningPlan".equals(key);
+                if (winning && "stage".equals(key)) {
+                    stages.add(json.getString(key));
+                }
+                collectWinningStages(json.getValue(key), winning, stages);
+            }
+        } else if (node instanceof JsonArray) {
+            for (Object o : (JsonArray) node) {
+                collectWinningStages(o, inWinningPlan, stages);
+            }
+        }
+    }
+
+    @Test
+    public void listShouldUseIndexes(TestContext context) {
+        assertIndexed(context, "list (manager)", find(visible(true), sorted()));
+        assertIndexed(context, "list (contributor)", find(visible(false), sorted()));
+    }
+
+    @Test
+    public void listPublicShouldUseIndexes(TestContext context) {
+        assertIndexed(context, "listPublic", find(state("PUBLISHED"), sorted()));
+    }
+
+    @Test
+    public void countShouldUseIndexes(TestContext context) {
+        assertIndexed(context, "count", new JsonObject().put("count", COLLECTION).put("query", state("PUBLISHED")));
+        assertIndexed(context, "counter", aggregate(new JsonArray()
+                .add(new JsonObject().put("$match", visible(false)))
+                .add(new JsonObject().put("$group", new JsonObject().put("_id", "$state")
+                        .put("count", new JsonObject().put("$sum", 1))))));
+    }
+
+    @Test
+    public void listOneShouldUseIndexes(TestContext context) {
+        assertIndexed(context, "listOne", find(visible(true).put("_id", "idx-post-0-1"), null));
+    }
+}
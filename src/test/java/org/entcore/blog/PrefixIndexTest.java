@@ -0,0 +1,49 @@
+package org.entcore.blog;
+
+import io.vertx.core.json.JsonObject;
+import org.entcore.blog.search.index.PrefixIndex;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrefixIndexTest {
+
+    static PrefixIndex.Entry createEntry(String id, String blogId) {
+        return new PrefixIndex.Entry("post:" + id, blogId, false, new JsonObject().put("_id", id));
+    }
+
+    static List<String> entryKeys(List<PrefixIndex.Entry> entries) {
+        return entries.stream().map(PrefixIndex.Entry::getKey).collect(Collectors.toList());
+    }
+
+    @Test
+    public void completeShouldMatchTheStartOfTheTitle() {
+        final PrefixIndex index = new PrefixIndex();
+        index.put(createEntry("1", "b1"), "Sortie au Musée");
+        index.put(createEntry("2", "b1"), "Musique de l'été");
+        index.put(createEntry("3", "b2"), "Été à la mer");
+        index.put(createEntry("4", "b2"), "Musique");
+        assertEquals(Arrays.asList("post:4", "post:2"), entryKeys(index.complete("mus", e -> true, 10, 1000)));
+        assertEquals(Arrays.asList("post:1"), entryKeys(index.complete("SORTIE AU MUSÉE", e -> true, 10, 1000)));
+        assertEquals(Arrays.asList("post:3"), entryKeys(index.complete("ete", e -> true, 10, 1000)));
+        assertEquals(0, index.complete("musee", e -> true, 10, 1000).size());
+    }
+
+    @Test
+    public void completeShouldFilterLimitAndFollowUpdates() {
+        final PrefixIndex index = new PrefixIndex();
+        index.put(createEntry("1", "b1"), "Sortie sportive");
+        index.put(createEntry("2", "b2"), "Sortie");
+        assertEquals(Arrays.asList("post:1"), entryKeys(index.complete("sort", e -> "b1".equals(e.getBlogId()), 10, 1000)));
+        assertEquals(1, index.complete("sort", e -> true, 1, 1000).size());
+        index.put(createEntry("1", "b1"), "Piscine");
+        assertEquals(Arrays.asList("post:2"), entryKeys(index.complete("sort", e -> true, 10, 1000)));
+        index.remove("post:2");
+        assertEquals(0, index.complete("sort", e -> true, 10, 1000).size());
+        assertEquals(1, index.size());
+    }
+}
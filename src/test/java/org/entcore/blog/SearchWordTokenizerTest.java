@@ -0,0 +1,65 @@
+package org.entcore.blog;
+
+import org.entcore.blog.search.SearchWordTokenizer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearchWordTokenizerTest {
+    static final List<String> QUERIES = Arrays.asList(
+            "",
+            "   ",
+            "sortie",
+            "Sortie  scolaire au   musée",
+            "l'école, la cantine ; et (les) devoirs !",
+            "compte-rendu\tdu\nconseil de classe... 2023/2024",
+            "\"réunion parents-professeurs\" #CM2 @directeur",
+            "aujourd'hui   aujourd'hui AUJOURD'HUI");
+
+    // former regex implementation of DefaultBlogService.checkAndComposeWordFromSearchText
+    static Set<String> regexWords(String searchText, int minSize) {
+        final Set<String> searchWords = new HashSet<>();
+        final String searchTextTreaty = searchText.replaceAll("\\s+", " ").trim();
+        if (!searchTextTreaty.isEmpty()) {
+            for (String w : searchTextTreaty.split(" ")) {
+                final String wTraity = w.replaceAll("(?!')\\p{Punct}", "");
+                if (wTraity.length() >= minSize) {
+                    searchWords.add(wTraity);
+                }
+            }
+        }
+        return searchWords;
+    }
+
+    @Test
+    public void wordsShouldMatchTheRegexImplementation() {
+        for (String query : QUERIES) {
+            for (int minSize = 1; minSize <= 4; minSize++) {
+                assertEquals(query, regexWords(query, minSize), new HashSet<>(SearchWordTokenizer.words(query, minSize, false)));
+            }
+        }
+    }
+
+    @Test
+    public void wordsShouldBeNormalizedAsTheTerms() {
+        assertEquals(Arrays.asList("eleve", "reunion", "coeur", "garcon"),
+                SearchWordTokenizer.words("Élève RÉUNION cœur garçon élève", 4, true));
+    }
+
+    @Test
+    public void termsShouldSplitOnEveryNonLetter() {
+        assertEquals(new HashSet<>(Arrays.asList("l", "eleve", "compte", "rendu", "2023", "cm2")),
+                SearchWordTokenizer.terms("L'Élève : compte-rendu 2023, #CM2 l'élève"));
+    }
+
+    @Test
+    public void normalizeShouldLowerCaseAndFoldAccents() {
+        assertEquals("l'eleve a l'ecole, coeur", SearchWordTokenizer.normalize("L'Élève à l'ÉCOLE, Cœur"));
+        assertEquals("ecole", SearchWordTokenizer.normalize("L'ÉCOLE", 2, 7));
+    }
+}
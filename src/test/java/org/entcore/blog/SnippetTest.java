@@ -0,0 +1,44 @@
+package org.entcore.blog;
+
+import io.vertx.core.json.JsonArray;
+import org.entcore.blog.search.Snippet;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SnippetTest {
+
+    static String highlighted(Snippet snippet, int index) {
+        final JsonArray bounds = snippet.getHighlights().getJsonArray(index);
+        return snippet.getText().substring(bounds.getInteger(0), bounds.getInteger(1));
+    }
+
+    @Test
+    public void snippetShouldBeBoundedAroundTheFirstMatch() {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("lorem ipsum ");
+        }
+        content.append("Sortie au musée du Louvre, les sorties reprennent. ");
+        for (int i = 0; i < 5000; i++) {
+            content.append("dolor sit amet ");
+        }
+        final Snippet snippet = Snippet.of(content.toString(), Collections.singletonList("sortie"), 200);
+        assertTrue(snippet.getText().length() <= 202);
+        assertTrue(snippet.getText().startsWith("…") && snippet.getText().endsWith("…"));
+        assertEquals(2, snippet.getHighlights().size());
+        assertEquals("Sortie", highlighted(snippet, 0));
+        assertEquals("sorties", highlighted(snippet, 1));
+    }
+
+    @Test
+    public void snippetShouldStartAtTheBeginningWithoutMatch() {
+        final Snippet snippet = Snippet.of("Compte rendu du conseil de classe", Arrays.asList("cantine"), 200);
+        assertEquals("Compte rendu du conseil de classe", snippet.getText());
+        assertEquals(0, snippet.getHighlights().size());
+    }
+}